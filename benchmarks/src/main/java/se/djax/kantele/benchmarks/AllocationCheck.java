@@ -0,0 +1,212 @@
+package se.djax.kantele.benchmarks;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import se.djax.kantele.Kantele;
+import se.djax.kantele.input.ScriptedInput;
+import se.djax.kantele.renderer.DamageTracker;
+import se.djax.kantele.renderer.HeadlessRenderer;
+import se.djax.kantele.renderer.Renderer;
+import se.djax.kantele.stack.Stack;
+
+/**
+ * Checks that updating and rendering the game allocates nothing once the code
+ * is compiled. Every scenario is run until it is warmed up and then the bytes
+ * allocated by the thread over many frames are counted. Exits with status 1 if
+ * the frames allocate.
+ * <p>
+ * The check is made with a renderer that draws nothing, so that everything but
+ * the drawing itself is covered. The scenarios are also run with a
+ * {@link HeadlessRenderer} and reported, but not checked: the Java2D pipelines
+ * create temporary rectangles that are only removed if the JIT compiler happens
+ * to inline deep enough.
+ * <p>
+ * Run with: gradle :benchmarks:allocationCheck
+ *
+ */
+public class AllocationCheck {
+
+	private static final float DELTA = 1 / 60f;
+	private static final int WARMUP_FRAMES = 100_000;
+	private static final int FRAMES = 20_000;
+
+	/**
+	 * Allocated once in a while by the JVM itself, e.g. when compiled code is
+	 * deoptimized. Allocating a single object every hundred frames is more than
+	 * this
+	 */
+	private static final long ONE_OFF_BYTES = 1024;
+
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final ScriptedInput input = new ScriptedInput();
+	private final Kantele kantele;
+	private final float cardX;
+	private final float cardY;
+
+	private AllocationCheck(Renderer<?> renderer) {
+		renderer.awaitTextures();
+		kantele = new Kantele(renderer, input);
+		// Nothing should be moved to the foundations by the drags
+		kantele.setAutoCompleteDelay(Float.MAX_VALUE);
+
+		Stack tableau = kantele.getBoard().getTableaus()[6];
+		cardX = tableau.getTop().getX() + 10;
+		cardY = tableau.getTop().getY() + 10;
+	}
+
+	/**
+	 * A renderer with textures that are never drawn
+	 */
+	private static class NullRenderer extends Renderer<Object> {
+
+		private static final Object IMAGE = new Object();
+
+		@Override
+		protected void drawImage(Object image, float x, float y, float width, float height) {
+		}
+
+		@Override
+		protected void drawRect(float x, float y, float width, float height) {
+		}
+
+		@Override
+		protected Object loadImage(String path) {
+			return IMAGE;
+		}
+
+		@Override
+		protected void setClip(float x, float y, float width, float height) {
+		}
+
+		@Override
+		protected void present(DamageTracker damage) {
+		}
+
+		@Override
+		protected void clearScreen() {
+		}
+
+		@Override
+		protected void beginDrawImages() {
+		}
+
+		@Override
+		protected void endDrawImages() {
+		}
+
+		@Override
+		protected void beginDrawShapes() {
+		}
+
+		@Override
+		protected void endDrawShapes() {
+		}
+
+	}
+
+	/**
+	 * One frame of a scenario
+	 */
+	private interface Frame {
+		void run(int i);
+	}
+
+	/**
+	 * The pointer moves over the table without touching anything
+	 */
+	private void idle(int i) {
+		input.moveTo(100 + i % 500, 300);
+		kantele.update(DELTA);
+		kantele.render();
+	}
+
+	/**
+	 * A card is dragged around the table
+	 */
+	private void drag(int i) {
+		if (i == 0) {
+			input.moveTo(cardX, cardY);
+			input.press();
+			kantele.update(DELTA);
+		}
+		input.moveTo(cardX + i % 300, cardY - i % 200);
+		kantele.update(DELTA);
+		kantele.render();
+	}
+
+	/**
+	 * A card is picked up, moved and dropped back where it was every four frames
+	 */
+	private void pickAndDrop(int i) {
+		switch (i % 4) {
+		case 0:
+			input.moveTo(cardX, cardY);
+			input.press();
+			break;
+		case 1:
+			input.moveTo(cardX + 50, cardY - 50);
+			break;
+		case 2:
+			input.moveTo(cardX, cardY);
+			break;
+		default:
+			input.release();
+			break;
+		}
+		kantele.update(DELTA);
+		kantele.render();
+	}
+
+	/**
+	 * @param name
+	 * @param frame
+	 * @return true if the frames do not allocate
+	 */
+	private boolean measure(String name, Frame frame) {
+		for (int i = 0; i < WARMUP_FRAMES; i++) {
+			frame.run(i);
+		}
+
+		long id = Thread.currentThread().getId();
+		long start = THREADS.getThreadAllocatedBytes(id);
+		for (int i = 0; i < FRAMES; i++) {
+			frame.run(i);
+		}
+		long bytes = THREADS.getThreadAllocatedBytes(id) - start;
+
+		System.out.printf("%-12s %8.1f bytes/frame %8d bytes in total%n", name, bytes / (double) FRAMES, bytes);
+
+		// Leave the scenario without anything picked
+		input.release();
+		kantele.update(DELTA);
+		kantele.update(DELTA);
+		return bytes <= ONE_OFF_BYTES;
+	}
+
+	/**
+	 * @return true if no scenario allocates
+	 */
+	private boolean measureAll() {
+		boolean passed = measure("idle", this::idle);
+		passed &= measure("drag", this::drag);
+		passed &= measure("pickAndDrop", this::pickAndDrop);
+		return passed;
+	}
+
+	public static void main(String[] args) {
+		System.out.println("Without drawing:");
+		boolean passed = new AllocationCheck(new NullRenderer()).measureAll();
+
+		System.out.println("Java2D, not checked:");
+		new AllocationCheck(new HeadlessRenderer()).measureAll();
+
+		if (!passed) {
+			System.err.println("Frames allocate in steady state");
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package se.djax.kantele.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.djax.kantele.model.Card;
+import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.model.PackedBoard;
+
+/**
+ * Dealing a new game, including creating and shuffling the deck, compared to
+ * dealing the same deal on a packed board
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBoardBenchmark {
+
+	private final PackedBoard packed = new PackedBoard();
+	private final int[] ids = new int[Card.DECK_SIZE];
+	private long deal;
+
+	@Benchmark
+	public GameBoard create() {
+		return new GameBoard(deal++);
+	}
+
+	@Benchmark
+	public PackedBoard dealPacked() {
+		packed.deal(deal++, ids);
+		return packed;
+	}
+
+}
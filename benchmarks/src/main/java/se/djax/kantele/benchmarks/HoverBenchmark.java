@@ -0,0 +1,89 @@
+package se.djax.kantele.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.djax.kantele.input.InputManager;
+import se.djax.kantele.input.ScriptedInput;
+import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.renderer.Renderer;
+
+/**
+ * Finding the stack and card under the pointer, done every tick. The pointer
+ * is either still, when the previous result can be reused, or moving one unit
+ * back and forth so that a new lookup is needed every time
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HoverBenchmark {
+
+	/**
+	 * Where the pointer is: over the last tableau, over the deck or over the empty
+	 * table
+	 */
+	@Param({ "tableau", "deck", "none" })
+	public String pointer;
+
+	private GameBoard board;
+	private ScriptedInput input;
+	private InputManager inputManager;
+	private float x;
+	private float y;
+	private boolean moved;
+
+	@Setup
+	public void setup() {
+		board = new GameBoard(1L);
+
+		switch (pointer) {
+		case "tableau":
+			x = board.getTableaus()[6].getX() + 10;
+			y = board.getTableaus()[6].getY() + 10;
+			break;
+		case "deck":
+			x = board.getDeck().getX() + 10;
+			y = board.getDeck().getY() + 10;
+			break;
+		default:
+			x = Renderer.RENDER_WIDTH / 2;
+			y = 1;
+			break;
+		}
+
+		// Nothing is touched so no events are fired
+		input = new ScriptedInput();
+		input.moveTo(x, y);
+		inputManager = new InputManager(input);
+		inputManager.update(board, null);
+	}
+
+	@Benchmark
+	public void updateHovers() {
+		inputManager.updateHovers(board);
+	}
+
+	@Benchmark
+	public void updateHoversMoving() {
+		moved = !moved;
+		input.moveTo(moved ? x + 1 : x, y);
+		inputManager.update(board, null);
+		inputManager.updateHovers(board);
+	}
+
+}
@@ -0,0 +1,43 @@
+package se.djax.kantele.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.djax.kantele.metrics.Histogram;
+
+/**
+ * The overhead of timing a part of a frame, recording a value and timing with
+ * {@link System#nanoTime()}
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetricsBenchmark {
+
+	private final Histogram histogram = new Histogram("benchmark", "Benchmark");
+	private long value;
+
+	@Benchmark
+	public void record() {
+		histogram.record(value++ & 0xFFFFF);
+	}
+
+	@Benchmark
+	public void recordSince() {
+		histogram.recordSince(System.nanoTime());
+	}
+
+}
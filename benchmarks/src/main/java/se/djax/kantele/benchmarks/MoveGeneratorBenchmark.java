@@ -0,0 +1,54 @@
+package se.djax.kantele.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.model.MoveGenerator;
+import se.djax.kantele.model.PackedBoard;
+
+/**
+ * Generating every legal move of a dealt position, from the game board and from
+ * the packed board
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveGeneratorBenchmark {
+
+	private final MoveGenerator generator = new MoveGenerator();
+	private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+	private GameBoard board;
+	private PackedBoard packed;
+
+	@Setup
+	public void setup() {
+		board = new GameBoard(1L);
+		packed = PackedBoard.of(board);
+	}
+
+	@Benchmark
+	public int generateGameBoard() {
+		return generator.generate(board, moves);
+	}
+
+	@Benchmark
+	public int generatePacked() {
+		return MoveGenerator.generate(packed, moves);
+	}
+
+}
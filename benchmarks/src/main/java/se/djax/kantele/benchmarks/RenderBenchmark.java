@@ -0,0 +1,63 @@
+package se.djax.kantele.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.djax.kantele.Kantele;
+import se.djax.kantele.input.ScriptedInput;
+import se.djax.kantele.renderer.HeadlessRenderer;
+
+/**
+ * Frames of the game with the headless renderer: an idle frame where nothing
+ * has changed and a frame where everything is redrawn. Needs the textures of
+ * the lib project in the working directory
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+	private static final float DELTA = 1 / 60f;
+
+	private HeadlessRenderer renderer;
+	private Kantele kantele;
+
+	@Setup
+	public void setup() {
+		renderer = new HeadlessRenderer();
+		renderer.awaitTextures();
+		kantele = new Kantele(renderer, new ScriptedInput());
+	}
+
+	@Benchmark
+	public void render() {
+		kantele.render();
+	}
+
+	@Benchmark
+	public void renderFull() {
+		renderer.invalidateAll();
+		kantele.render();
+	}
+
+	@Benchmark
+	public void updateAndRender() {
+		kantele.update(DELTA);
+		kantele.render();
+	}
+
+}
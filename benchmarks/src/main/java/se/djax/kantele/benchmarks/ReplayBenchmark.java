@@ -0,0 +1,66 @@
+package se.djax.kantele.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.model.Replay;
+import se.djax.kantele.model.ReplayEngine;
+import se.djax.kantele.solver.Solver;
+
+/**
+ * Replaying solved games with every move validated, measured per game
+ * including the deal
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReplayBenchmark {
+
+	private static final int GAMES = 16;
+
+	private final ReplayEngine engine = new ReplayEngine();
+	private Replay[] replays;
+
+	@Setup
+	public void setup() {
+		Solver solver = new Solver(18);
+		solver.setNodeLimit(200_000);
+
+		replays = new Replay[GAMES];
+		for (int i = 0; i < GAMES; i++) {
+			int[] moves = solver.solve(new GameBoard(i)).getMoves();
+			short[] recorded = new short[moves.length];
+			for (int j = 0; j < moves.length; j++) {
+				recorded[j] = (short) moves[j];
+			}
+			replays[i] = new Replay(i, recorded);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(GAMES)
+	public int replay() {
+		int applied = 0;
+		for (Replay replay : replays) {
+			applied += engine.replay(replay);
+		}
+		return applied;
+	}
+
+}
@@ -0,0 +1,72 @@
+package se.djax.kantele.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se.djax.kantele.model.Card;
+import se.djax.kantele.stack.Foundation;
+import se.djax.kantele.stack.Stack;
+import se.djax.kantele.stack.Tableau;
+
+/**
+ * The rules deciding if a card may be added to a stack, checked for every card
+ * of a deck against a non empty tableau and foundation
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RulesBenchmark {
+
+	private Stack tableau;
+	private Stack foundation;
+	private Card[] cards;
+
+	@Setup
+	public void setup() {
+		List<Card> deck = Card.createStandardDeck(false);
+		for (Card card : deck) {
+			card.setFaceDown(false);
+		}
+
+		// Ten of diamonds on a tableau and ace of diamonds on a foundation
+		List<Card> tableauCards = new ArrayList<Card>();
+		tableauCards.add(deck.get(9));
+		tableau = new Tableau(0, 0, tableauCards);
+		foundation = new Foundation(0, 0);
+		foundation.add(deck.get(0));
+
+		cards = deck.toArray(new Card[0]);
+	}
+
+	@Benchmark
+	public void tableauCanAdd(Blackhole blackhole) {
+		for (Card card : cards) {
+			blackhole.consume(tableau.canAdd(card));
+		}
+	}
+
+	@Benchmark
+	public void foundationCanAdd(Blackhole blackhole) {
+		for (Card card : cards) {
+			blackhole.consume(foundation.canAdd(card));
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package se.djax.kantele.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.djax.kantele.model.Card;
+import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.stack.Pile;
+import se.djax.kantele.stack.Stack;
+
+/**
+ * Adding, removing, picking and restoring cards on stacks. Every benchmark
+ * leaves the stack as it found it so the state does not drift between
+ * invocations
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StackBenchmark {
+
+	private Stack pile;
+	private Card card;
+
+	private Stack tableau;
+	private Card firstPicked;
+
+	@Setup
+	public void setup() {
+		List<Card> deck = Card.createStandardDeck(1L);
+		pile = new Pile(0, 0, true, new ArrayList<Card>(deck.subList(0, 24)));
+		card = deck.get(24);
+
+		// The last tableau of a new game holds seven cards
+		GameBoard board = new GameBoard(1L);
+		tableau = board.getTableaus()[6];
+		firstPicked = tableau.getCards().get(3);
+	}
+
+	@Benchmark
+	public Card addRemoveTop() {
+		pile.add(card);
+		return pile.removeTop();
+	}
+
+	@Benchmark
+	public List<Card> pickRestore() {
+		List<Card> picked = tableau.pickCards(firstPicked);
+		tableau.restore();
+		return picked;
+	}
+
+}
@@ -0,0 +1,80 @@
+package se.djax.kantele.renderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Checks that an image written to a {@link PixelCache} is read back with the
+ * same size and pixels, and that it is no longer read once the source file has
+ * changed. In the package of the cache since the cache is not public. Exits
+ * with status 1 if the check fails.
+ * <p>
+ * Run with: gradle :benchmarks:pixelCacheCheck
+ *
+ */
+public class PixelCacheCheck {
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Files.createTempDirectory("kantele-pixelcache-check");
+		File source = directory.resolve("source.png").toFile();
+
+		// An odd size and a pixel that differs everywhere, with some transparency
+		BufferedImage image = new BufferedImage(37, 23, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, (x * 7 + y * 5) << 24 | x << 16 | y << 8 | (x ^ y));
+			}
+		}
+		ImageIO.write(image, "png", source);
+
+		PixelCache cache = new PixelCache(directory.resolve("cache"));
+		boolean passed = true;
+		if (cache.read(source) != null) {
+			System.err.println("An empty cache returned an image");
+			passed = false;
+		}
+
+		cache.write(source, image);
+		BufferedImage cached = cache.read(source);
+		if (cached == null) {
+			System.err.println("The written image was not read back");
+			passed = false;
+		} else if (!samePixels(image, cached)) {
+			System.err.println("The image read back differs from the written one");
+			passed = false;
+		}
+
+		if (!source.setLastModified(source.lastModified() - 10_000)) {
+			throw new IOException("Could not change the modification time of " + source);
+		}
+		if (cache.read(source) != null) {
+			System.err.println("The image was read after the source file changed");
+			passed = false;
+		}
+
+		if (!passed) {
+			System.exit(1);
+		}
+		System.out.println("Pixel cache round trip passed");
+	}
+
+	private static boolean samePixels(BufferedImage a, BufferedImage b) {
+		if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+			return false;
+		}
+		for (int y = 0; y < a.getHeight(); y++) {
+			for (int x = 0; x < a.getWidth(); x++) {
+				if (a.getRGB(x, y) != b.getRGB(x, y)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,245 @@
+package se.djax.kantele;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import se.djax.kantele.metrics.Metrics;
+import se.djax.kantele.renderer.BoardSnapshot;
+import se.djax.kantele.renderer.Renderer;
+
+/**
+ * Runs the game on two threads of its own. The game thread updates the game
+ * logic with a fixed time step for the real time that has passed, measured
+ * with {@link System#nanoTime()}, and publishes a {@link BoardSnapshot} after
+ * every update. The render thread draws the latest snapshot as often as the
+ * target frame rate allows, with moving objects interpolated from the update
+ * before it, so updating and drawing can run at the same time on different
+ * processors and never touch the same cards
+ *
+ */
+public class GameLoop implements Runnable {
+
+	public static final int DEFAULT_TICK_RATE = 60;
+	public static final int DEFAULT_FPS = 60;
+
+	/**
+	 * The longest time simulated per frame, so that the game does not try to catch
+	 * up forever after a stall
+	 */
+	private static final long MAX_FRAME_NANOS = 250_000_000L;
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	private final Kantele kantele;
+	private final long stepNanos;
+	private final float step;
+
+	/**
+	 * Time between frames or 0 to render as often as possible
+	 */
+	private volatile long frameNanos;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * Draws the published snapshots, null if the game has no renderer
+	 */
+	private Thread renderThread;
+
+	// Frame rate measured over the last second
+	private volatile float fps;
+
+	/**
+	 * Tasks from other threads to run on the game thread before the next update
+	 */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * A game loop with {@link GameLoop#DEFAULT_TICK_RATE} updates and
+	 * {@link GameLoop#DEFAULT_FPS} frames per second
+	 * 
+	 * @param kantele
+	 */
+	public GameLoop(Kantele kantele) {
+		this(kantele, DEFAULT_TICK_RATE, DEFAULT_FPS);
+	}
+
+	/**
+	 * @param kantele
+	 * @param tickRate
+	 *            number of updates of the game logic per second
+	 * @param targetFps
+	 *            number of rendered frames per second, 0 or less for as many as
+	 *            possible
+	 */
+	public GameLoop(Kantele kantele, int tickRate, int targetFps) {
+		if (tickRate <= 0) {
+			throw new IllegalArgumentException("Tick rate must be positive: " + tickRate);
+		}
+		this.kantele = kantele;
+		this.stepNanos = NANOS_PER_SECOND / tickRate;
+		this.step = stepNanos / (float) NANOS_PER_SECOND;
+		setTargetFps(targetFps);
+	}
+
+	/**
+	 * @param targetFps
+	 *            number of rendered frames per second, 0 or less for as many as
+	 *            possible
+	 */
+	public void setTargetFps(int targetFps) {
+		frameNanos = targetFps > 0 ? NANOS_PER_SECOND / targetFps : 0;
+	}
+
+	/**
+	 * Start the game thread and the render thread if the game has a renderer
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Game loop is already running");
+		}
+		running = true;
+		thread = new Thread(this, "Kantele game loop");
+		thread.start();
+		if (kantele.getRenderer() != null) {
+			renderThread = new Thread(this::render, "Kantele render loop");
+			renderThread.start();
+		}
+	}
+
+	/**
+	 * Stop the threads and wait for the current update and frame to finish
+	 * 
+	 * @throws InterruptedException
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(thread);
+		thread.join();
+		thread = null;
+		if (renderThread != null) {
+			LockSupport.unpark(renderThread);
+			renderThread.join();
+			renderThread = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		long previous = System.nanoTime();
+		long accumulator = 0;
+
+		while (running) {
+			long now = System.nanoTime();
+			accumulator += Math.min(now - previous, MAX_FRAME_NANOS);
+			previous = now;
+
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// A failed task must not stop the game
+					e.printStackTrace();
+				}
+			}
+
+			while (accumulator >= stepNanos) {
+				kantele.update(step);
+				accumulator -= stepNanos;
+			}
+
+			waitUntil(now + stepNanos - accumulator);
+		}
+	}
+
+	/**
+	 * Draw the latest snapshot of the game until the loop is stopped, run by the
+	 * render thread
+	 */
+	private void render() {
+		Renderer<?> renderer = kantele.getRenderer();
+		long nextFrame = System.nanoTime();
+
+		int frames = 0;
+		long fpsStart = nextFrame;
+
+		while (running) {
+			long now = System.nanoTime();
+			BoardSnapshot snapshot = kantele.getSnapshots().acquire();
+			float alpha = Math.min((float) (now - snapshot.getTime()) / stepNanos, 1);
+			renderer.render(snapshot, Math.max(alpha, 0));
+			Metrics.FRAME.recordSince(now);
+
+			frames++;
+			if (now - fpsStart >= NANOS_PER_SECOND) {
+				fps = frames * (float) NANOS_PER_SECOND / (now - fpsStart);
+				frames = 0;
+				fpsStart = now;
+			}
+
+			waitForNextFrame(nextFrame += frameNanos);
+			if (System.nanoTime() - nextFrame > frameNanos) {
+				// Too far behind, start over instead of rendering a burst of frames
+				nextFrame = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Sleep until the time for the next frame, or just let other threads run if
+	 * there is no frame rate limit
+	 * 
+	 * @param deadline
+	 */
+	private void waitForNextFrame(long deadline) {
+		if (frameNanos == 0) {
+			Thread.yield();
+			return;
+		}
+		waitUntil(deadline);
+	}
+
+	/**
+	 * Sleep until a time or until the loop is stopped
+	 * 
+	 * @param deadline
+	 *            in {@link System#nanoTime()} time
+	 */
+	private void waitUntil(long deadline) {
+		long remaining;
+		while (running && (remaining = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(this, remaining);
+		}
+	}
+
+	/**
+	 * Run a task on the game thread before the next update, e.g. to change the game
+	 * from an event of the user interface. An exception thrown by the task is
+	 * reported and the game goes on
+	 * 
+	 * @param task
+	 */
+	public void post(Runnable task) {
+		tasks.add(task);
+	}
+
+	/**
+	 * @return the number of frames rendered per second, measured over the last
+	 *         second
+	 */
+	public float getFps() {
+		return fps;
+	}
+
+}
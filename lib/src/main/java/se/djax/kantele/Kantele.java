@@ -1,11 +1,28 @@
 package se.djax.kantele;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
 import se.djax.kantele.input.InputGenerator;
 import se.djax.kantele.input.InputListener;
 import se.djax.kantele.input.InputManager;
+import se.djax.kantele.metrics.ActionRecorder;
+import se.djax.kantele.metrics.Metrics;
+import se.djax.kantele.metrics.PhaseEvent;
 import se.djax.kantele.model.Card;
+import se.djax.kantele.model.Deal;
 import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.model.Move;
+import se.djax.kantele.model.MoveHistory;
+import se.djax.kantele.model.PackedBoard;
+import se.djax.kantele.model.Replay;
+import se.djax.kantele.renderer.BoardSnapshot;
 import se.djax.kantele.renderer.Renderer;
+import se.djax.kantele.renderer.SnapshotBuffer;
+import se.djax.kantele.solver.DealDatabase;
+import se.djax.kantele.solver.HintService;
+import se.djax.kantele.solver.Solver;
 import se.djax.kantele.stack.Foundation;
 import se.djax.kantele.stack.PickedStack;
 import se.djax.kantele.stack.Stack;
@@ -18,15 +35,87 @@ public class Kantele implements InputListener {
 
 	private static final float WINSCREEN_TIME = 1.5f;
 
+	/**
+	 * Default time in seconds between the moves finishing a decided game
+	 */
+	public static final float DEFAULT_AUTO_COMPLETE_DELAY = 0.05f;
+
 	private GameBoard board;
 	private final Renderer<?> renderer;
 	private final InputManager inputManager;
 
+	/**
+	 * Snapshots of the game published after every update for the renderer, null
+	 * if the game has no renderer
+	 */
+	private final SnapshotBuffer snapshots;
+
+	/**
+	 * Passes the actions of the player to this game, recording them for the
+	 * flight recorder
+	 */
+	private final ActionRecorder actions = new ActionRecorder(this);
+
 	private PickedStack dragedCards;
+
+	/**
+	 * Reused for every drag so that dragging does not allocate
+	 */
+	private final PickedStack pickedCards = new PickedStack();
+
 	private float winTimer;
 
+	/**
+	 * Every move made since the game was reset
+	 */
+	private final MoveHistory history = new MoveHistory();
+
+	/**
+	 * Number of the current deal, recorded with the moves in a {@link Replay}
+	 */
+	private long deal;
+
+	/**
+	 * Solved deals to pick new deals from, or null to deal any deal
+	 */
+	private DealDatabase deals;
+
+	/**
+	 * Directory where the replay of every game is saved when it ends, or null
+	 */
+	private Path replayDirectory;
+
+	/**
+	 * Searches for a suggested move after every move, or null
+	 */
+	private HintService hints;
+
+	/**
+	 * The moves finishing the game once it is decided, played one at a time.
+	 * Created when the first game is decided
+	 */
+	private int[] finishingMoves;
+	private int finishingCount;
+	private int finishingIndex;
+	private float autoCompleteDelay = DEFAULT_AUTO_COMPLETE_DELAY;
+	private float autoCompleteTimer;
+
+	// Position of the draged cards after the last and the previous update, used
+	// to interpolate between updates when rendering
+	private float dragedX;
+	private float dragedY;
+	private float previousDragedX;
+	private float previousDragedY;
+
+	/**
+	 * @param renderer
+	 *            the renderer of the game, or null if the game is never rendered
+	 *            by itself
+	 * @param inputGenerator
+	 */
 	public Kantele(Renderer<?> renderer, InputGenerator inputGenerator) {
 		this.renderer = renderer;
+		this.snapshots = renderer == null ? null : new SnapshotBuffer();
 		this.inputManager = new InputManager(inputGenerator);
 		reset();
 	}
@@ -35,8 +124,192 @@ public class Kantele implements InputListener {
 	 * Reset the game to initial state
 	 */
 	public void reset() {
-		board = new GameBoard();
+		saveReplay();
+		deal = deals == null ? ThreadLocalRandom.current().nextLong() : deals.randomWonDeal(ThreadLocalRandom.current());
+		board = new GameBoard(deal);
+		history.clear();
 		winTimer = 0;
+		stopAutoComplete();
+		requestHint();
+	}
+
+	/**
+	 * Make a move and add it to the history
+	 * 
+	 * @param move
+	 *            see {@link Move}
+	 */
+	private void play(int move) {
+		board.apply(move);
+		history.add(move);
+		startAutoComplete();
+		requestHint();
+	}
+
+	/**
+	 * Find the moves finishing the game if it has become decided, see
+	 * {@link GameBoard#isDecided()}. They are all played at once if there is no
+	 * delay
+	 */
+	private void startAutoComplete() {
+		stopAutoComplete();
+		if (!board.isDecided() || board.isWon()) {
+			return;
+		}
+
+		if (finishingMoves == null) {
+			finishingMoves = new int[Solver.MAX_FINISHING_MOVES];
+		}
+		finishingCount = Solver.finish(PackedBoard.of(board), finishingMoves);
+		if (autoCompleteDelay == 0) {
+			playFinishingMoves(0);
+		}
+	}
+
+	/**
+	 * Play the finishing moves that are due
+	 * 
+	 * @param delta
+	 *            time since last update in seconds
+	 */
+	private void playFinishingMoves(float delta) {
+		autoCompleteTimer += delta;
+		while (finishingIndex < finishingCount && autoCompleteTimer >= autoCompleteDelay) {
+			autoCompleteTimer -= autoCompleteDelay;
+			int move = finishingMoves[finishingIndex++];
+			board.apply(move);
+			history.add(move);
+		}
+	}
+
+	private void stopAutoComplete() {
+		finishingCount = 0;
+		finishingIndex = 0;
+		autoCompleteTimer = 0;
+	}
+
+	/**
+	 * @param seconds
+	 *            time between the moves finishing a decided game, 0 to finish it
+	 *            instantly
+	 */
+	public void setAutoCompleteDelay(float seconds) {
+		this.autoCompleteDelay = seconds;
+	}
+
+	/**
+	 * Revert the last move unless cards are being draged
+	 * 
+	 * @return true if a move was reverted
+	 */
+	public boolean undo() {
+		if (dragedCards != null || !history.canUndo()) {
+			return false;
+		}
+		board.undo(history.undo());
+		startAutoComplete();
+		requestHint();
+		return true;
+	}
+
+	/**
+	 * Make the last reverted move again unless cards are being draged
+	 * 
+	 * @return true if a move was made
+	 */
+	public boolean redo() {
+		if (dragedCards != null || !history.canRedo()) {
+			return false;
+		}
+		board.apply(history.redo());
+		startAutoComplete();
+		requestHint();
+		return true;
+	}
+
+	public MoveHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * @param hints
+	 *            the service searching for a suggested move after every move, or
+	 *            null to not show any hints. If cards are being draged the search
+	 *            starts when they are dropped
+	 */
+	public void setHintService(HintService hints) {
+		this.hints = hints;
+		requestHint();
+	}
+
+	private void requestHint() {
+		// The draged cards are on no stack of the board until they are dropped,
+		// which requests a hint again
+		if (hints != null && dragedCards == null) {
+			hints.request(board);
+		}
+	}
+
+	/**
+	 * @return the suggested next move for the current position (see {@link Move})
+	 *         or {@link HintService#NO_HINT}
+	 */
+	public int getHint() {
+		return hints == null ? HintService.NO_HINT : hints.getHint(board.getHash());
+	}
+
+	/**
+	 * @return the number of the current deal, see {@link Deal}
+	 */
+	public long getDeal() {
+		return deal;
+	}
+
+	/**
+	 * @param deals
+	 *            solved deals, every new game is a random deal the solver has won,
+	 *            or null to deal any deal
+	 * @throws IllegalArgumentException
+	 *             if the solver has won none of the deals
+	 */
+	public void setDealDatabase(DealDatabase deals) {
+		if (deals != null && !deals.hasWonDeal()) {
+			throw new IllegalArgumentException("The deal database has no won deals");
+		}
+		this.deals = deals;
+	}
+
+	/**
+	 * @return a replay of the current game up to now
+	 */
+	public Replay getReplay() {
+		return new Replay(deal, history);
+	}
+
+	/**
+	 * @param replayDirectory
+	 *            directory where the replay of every game is saved when it ends, or
+	 *            null to not save any replays
+	 */
+	public void setReplayDirectory(Path replayDirectory) {
+		this.replayDirectory = replayDirectory;
+	}
+
+	/**
+	 * Save the replay of the current game if there is one worth saving. A failure
+	 * is only reported since it should not stop the game
+	 */
+	private void saveReplay() {
+		if (replayDirectory == null || history.size() == 0) {
+			return;
+		}
+
+		Path file = replayDirectory.resolve(Long.toHexString(deal) + "-" + System.currentTimeMillis() + Replay.EXTENSION);
+		try {
+			getReplay().save(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	/**
@@ -48,14 +321,33 @@ public class Kantele implements InputListener {
 	 * 
 	 */
 	public void update(float delta) {
-		inputManager.update(delta, this);
-		inputManager.updateHovers(board.getStacks());
+		long start = System.nanoTime();
+		PhaseEvent updateEvent = PhaseEvent.start(PhaseEvent.UPDATE);
+
+		PhaseEvent phaseEvent = PhaseEvent.start(PhaseEvent.INPUT);
+		inputManager.update(board, actions);
+		PhaseEvent.finish(phaseEvent);
+		long input = System.nanoTime();
+		Metrics.INPUT.record(input - start);
+
+		phaseEvent = PhaseEvent.start(PhaseEvent.HOVERS);
+		inputManager.updateHovers(board);
+		PhaseEvent.finish(phaseEvent);
+		Metrics.HOVERS.recordSince(input);
 
 		if (dragedCards != null) {
 			updateDragedCardsPosition();
+		} else if (finishingIndex < finishingCount) {
+			// The finishing moves wait while the player is dragging cards
+			playFinishingMoves(delta);
 		}
 
 		checkWinCondition(delta);
+		if (snapshots != null) {
+			publishSnapshot();
+		}
+		PhaseEvent.finish(updateEvent);
+		Metrics.UPDATE.recordSince(start);
 	}
 
 	private void checkWinCondition(float delta) {
@@ -73,8 +365,12 @@ public class Kantele implements InputListener {
 	 */
 	private void updateDragedCardsPosition() {
 		Entity pointer = inputManager.getPointer();
-		dragedCards.setX(pointer.getX() - dragedCards.getWidth() / 2);
-		dragedCards.setY(pointer.getY() - Card.HEIGHT + Stack.CARD_HEIGHT_DELTA / 2);
+		previousDragedX = dragedX;
+		previousDragedY = dragedY;
+		dragedX = pointer.getX() - dragedCards.getWidth() / 2;
+		dragedY = pointer.getY() - Card.HEIGHT + Stack.CARD_HEIGHT_DELTA / 2;
+		dragedCards.setX(dragedX);
+		dragedCards.setY(dragedY);
 	}
 
 	public Stack getDragedCards() {
@@ -82,10 +378,53 @@ public class Kantele implements InputListener {
 	}
 
 	/**
-	 * Render the game
+	 * Copy what is drawn of the game, only to be called by the thread updating
+	 * the game
+	 * 
+	 * @param target
+	 */
+	public void snapshot(BoardSnapshot target) {
+		target.capture(board, dragedCards, previousDragedX - dragedX, previousDragedY - dragedY, getHint());
+	}
+
+	private void publishSnapshot() {
+		snapshot(snapshots.getWriteSnapshot());
+		snapshots.publish();
+	}
+
+	/**
+	 * @return the snapshots published after every update, which the renderer can
+	 *         draw on a thread of its own with
+	 *         {@link Renderer#render(BoardSnapshot, float)}, or null if the game
+	 *         has no renderer
+	 */
+	public SnapshotBuffer getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * Render the game as it is now
 	 */
 	public void render() {
-		renderer.render(this);
+		render(1);
+	}
+
+	/**
+	 * Render the game as it is now on the thread updating the game, with the
+	 * draged cards interpolated between the last two updates. Not to be mixed
+	 * with rendering the published snapshots on another thread
+	 * 
+	 * @param alpha
+	 *            how far between the previous (0) and the last (1) update the
+	 *            rendered frame is
+	 */
+	public void render(float alpha) {
+		if (renderer == null) {
+			throw new IllegalStateException("The game has no renderer");
+		}
+		// The board may have been changed since the last update
+		publishSnapshot();
+		renderer.render(snapshots.acquire(), alpha);
 	}
 
 	public GameBoard getBoard() {
@@ -107,8 +446,7 @@ public class Kantele implements InputListener {
 	private void autoAddFoundation(Stack stack, Card card) {
 		for (Stack foundation : board.getFoundations()) {
 			if (foundation.canAdd(card)) {
-				foundation.add(card);
-				stack.removeTop();
+				play(Move.move(stack.getIndex(), foundation.getIndex(), 1));
 				return;
 			}
 		}
@@ -124,13 +462,11 @@ public class Kantele implements InputListener {
 	public void onCardClicked(Stack stack, Card card) {
 		// Picka a card from the deck
 		if (stack == board.getDeck()) {
-			stack.removeTop();
-			card.setFaceDown(false);
-			board.getPickedDeck().add(card);
+			play(Move.draw());
 		} else {
 			// Turn a card from the tableaus face up
 			if (card.isFaceDown() && stack.getTop() == card) {
-				card.setFaceDown(false);
+				play(Move.flip(stack.getIndex()));
 			}
 		}
 	}
@@ -144,31 +480,30 @@ public class Kantele implements InputListener {
 	@Override
 	public void onDraggedStop(Stack stack) {
 		if (dragedCards != null) {
+			Stack source = dragedCards.getSourceStack();
+			int count = dragedCards.size();
+			boolean accepted = false;
 
-			// Make sure we dragged to a stack and it is not the picked deck
-			if (stack != null && stack != board.getPickedDeck()) {
-
-				// Foundation stacks should only accept one card at a time
-				if (!(stack instanceof Foundation) || dragedCards.size() == 1) {
-					while (!dragedCards.isEmpty()) {
+			// Make sure we dragged to another stack and it is not the picked deck
+			if (stack != null && stack != source && stack != board.getPickedDeck()) {
 
-						// Get the bottom card from the draged stack
-						Card card = dragedCards.getBottom();
-
-						// Add the card to the target stack of possible
-						if (stack.canAdd(card)) {
-							stack.add(card);
-							dragedCards.removeBottom();
-						} else {
-							break;
-						}
-					}
+				// Foundation stacks should only accept one card at a time. The face up
+				// cards picked from a stack always follow the rules, so if the target
+				// accepts the bottom card it accepts all of them
+				if (!(stack instanceof Foundation) || count == 1) {
+					accepted = stack.canAdd(dragedCards.getBottom());
 				}
 			}
 
-			// Restore any left over cards to source stack
+			// Put the cards back on the source stack and move them from there as one
+			// move that can be undone
 			dragedCards.restore();
 			dragedCards = null;
+			if (accepted) {
+				play(Move.move(source.getIndex(), stack.getIndex(), count));
+			} else {
+				requestHint();
+			}
 		}
 	}
 
@@ -183,8 +518,8 @@ public class Kantele implements InputListener {
 	public void onStackClicked(Stack stack) {
 
 		// Restore all cards from the picked deck if the deck is empty
-		if (stack == board.getDeck() && stack.isEmpty()) {
-			board.resetDeck();
+		if (stack == board.getDeck() && stack.isEmpty() && !board.getPickedDeck().isEmpty()) {
+			play(Move.recycle());
 		}
 	}
 
@@ -201,7 +536,18 @@ public class Kantele implements InputListener {
 		// Create a picked stack starting from the clicked card as long as it is not the
 		// deck
 		if (stack != board.getDeck()) {
-			dragedCards = new PickedStack(stack, card);
+			pickedCards.pick(stack, card);
+			dragedCards = pickedCards;
+
+			// Let the player have all the time while dragging
+			if (hints != null) {
+				hints.cancel();
+			}
+
+			// Nothing to interpolate from yet
+			updateDragedCardsPosition();
+			previousDragedX = dragedX;
+			previousDragedY = dragedY;
 		}
 	}
 
@@ -1,57 +1,170 @@
 package se.djax.kantele;
 
 import java.awt.BorderLayout;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 
 import javax.swing.JFrame;
-import javax.swing.JPanel;
-import javax.swing.Timer;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
+import se.djax.kantele.metrics.Metrics;
+import se.djax.kantele.metrics.MetricsServer;
 import se.djax.kantele.renderer.Renderer;
 import se.djax.kantele.renderer.SwingRenderer;
+import se.djax.kantele.solver.DealDatabase;
+import se.djax.kantele.solver.HintService;
 
 /**
  * Top level class of the game using Swing for rendering
  */
-public class SwingStarter extends JFrame implements ActionListener {
+public class SwingStarter extends JFrame {
 
 	private static final long serialVersionUID = -3138746293767211685L;
 	private final Kantele kantele;
+	private final GameLoop gameLoop;
+	private SwingRenderer swingRenderer;
+	private HintService hints;
 
 	/**
-	 * How often the game should update in milliseconds
+	 * @param args
+	 *            optionally the target number of frames per second, 0 for as many
+	 *            as possible. Replays of all games are saved to the directory set
+	 *            with the system property kantele.replays. Only deals known to be
+	 *            winnable are dealt if the system property kantele.deals is set to
+	 *            a deal database, see {@link DealDatabase}. The frame timers are
+	 *            registered over JMX and served over HTTP on the port set with the
+	 *            system property kantele.metrics.port, see {@link MetricsServer}
 	 */
-	private final int TICK_RATE = 16;
-
 	public static void main(String[] args) {
-		new SwingStarter();
+		int fps = args.length > 0 ? Integer.parseInt(args[0]) : GameLoop.DEFAULT_FPS;
+		new SwingStarter(fps);
 	}
 
-	public SwingStarter() {
+	public SwingStarter(int targetFps) {
 		setSize(Renderer.RENDER_WIDTH, Renderer.RENDER_HEIGHT);
 		setLocation(200, 200);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		setLayout(new BorderLayout());
-		setVisible(true);
 		setTitle("Kantele");
 
-		final JPanel gamePanel = new JPanel();
-		add(gamePanel, BorderLayout.CENTER);
+		final Canvas canvas = new Canvas() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void paint(Graphics g) {
+				// The canvas has been erased, the game loop presents everything again
+				if (swingRenderer != null) {
+					swingRenderer.invalidateAll();
+				}
+			}
 
-		SwingRenderer swingRenderer = new SwingRenderer(gamePanel);
+			@Override
+			public void update(Graphics g) {
+				paint(g);
+			}
+		};
+		add(canvas, BorderLayout.CENTER);
+		setVisible(true);
+
+		swingRenderer = new SwingRenderer(canvas);
 		kantele = new Kantele(swingRenderer, swingRenderer);
-		Timer timer = new Timer(TICK_RATE, this);
-		timer.start();
+		String replays = System.getProperty("kantele.replays");
+		if (replays != null) {
+			kantele.setReplayDirectory(Paths.get(replays));
+		}
+		String deals = System.getProperty("kantele.deals");
+		if (deals != null) {
+			try {
+				DealDatabase database = DealDatabase.open(Paths.get(deals), false);
+				if (database.hasWonDeal()) {
+					kantele.setDealDatabase(database);
+					kantele.reset();
+				} else {
+					// Still a game, just not one known to be winnable
+					System.err.println("No won deals in " + deals + ", dealing any deal");
+					database.close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		Metrics.registerMBeans();
+		String metricsPort = System.getProperty("kantele.metrics.port");
+		if (metricsPort != null) {
+			try {
+				new MetricsServer(Integer.parseInt(metricsPort));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		gameLoop = new GameLoop(kantele, GameLoop.DEFAULT_TICK_RATE, targetFps);
+		gameLoop.start();
+		reportTextureErrors();
+
+		// Ctrl+Z undoes the last move, Ctrl+Y or Ctrl+Shift+Z redoes it and H turns
+		// hints on or off
+		canvas.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if (e.getKeyCode() == KeyEvent.VK_H) {
+					toggleHints();
+					return;
+				}
+				if (!e.isControlDown()) {
+					return;
+				}
+				if (e.getKeyCode() == KeyEvent.VK_Z && !e.isShiftDown()) {
+					gameLoop.post(kantele::undo);
+				} else if (e.getKeyCode() == KeyEvent.VK_Y || e.getKeyCode() == KeyEvent.VK_Z) {
+					gameLoop.post(kantele::redo);
+				}
+			}
+		});
+		canvas.requestFocus();
+	}
+
+	/**
+	 * Wait for the textures in the background and tell the player if they could
+	 * not be loaded
+	 */
+	private void reportTextureErrors() {
+		Thread check = new Thread(() -> {
+			try {
+				swingRenderer.awaitTextures();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, e.getMessage() + "\n is your working directory correctly set?"));
+			}
+		}, "Kantele texture check");
+		check.setDaemon(true);
+		check.start();
 	}
 
-	/*
-	 * Update end render the game every TICK_RATE
+	/**
+	 * Start showing hints or stop the hint search, called on the event dispatch
+	 * thread
 	 */
-	@Override
-	public void actionPerformed(ActionEvent arg0) {
-		kantele.update(TICK_RATE / 1000f);
-		kantele.render();
+	private void toggleHints() {
+		if (hints == null) {
+			hints = new HintService();
+			HintService started = hints;
+			gameLoop.post(() -> kantele.setHintService(started));
+		} else {
+			HintService stopped = hints;
+			hints = null;
+			gameLoop.post(() -> {
+				kantele.setHintService(null);
+				stopped.close();
+			});
+		}
 	}
 
 }
@@ -0,0 +1,104 @@
+package se.djax.kantele.input;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import se.djax.kantele.model.Card;
+import se.djax.kantele.renderer.Renderer;
+import se.djax.kantele.stack.Stack;
+
+/**
+ * Spatial index of stacks used for hit testing the pointer. The screen is split
+ * into columns and every column holds the stacks whose horizontal extent
+ * reaches it, in the same order as the board. The vertical extent of a stack
+ * changes with its cards and is read directly from the stack, so the index only
+ * has to be rebuilt when the stacks themselves change or move sideways
+ *
+ */
+class HoverIndex {
+
+	private static final float COLUMN_WIDTH = Card.WIDTH / 2;
+	private static final int COLUMN_COUNT = (int) Math.ceil(Renderer.RENDER_WIDTH / COLUMN_WIDTH);
+	private static final Stack[] NO_STACKS = new Stack[0];
+
+	private final Stack[][] columns = new Stack[COLUMN_COUNT][];
+
+	// The stacks and their x positions when the index was built
+	private Stack[] stacks = NO_STACKS;
+	private float[] stackX = new float[0];
+
+	HoverIndex() {
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			columns[i] = NO_STACKS;
+		}
+	}
+
+	/**
+	 * Rebuild the index if the stacks have changed since the last call
+	 * 
+	 * @param stacks
+	 * @return true if the index was rebuilt
+	 */
+	boolean update(List<Stack> stacks) {
+		if (isValid(stacks)) {
+			return false;
+		}
+
+		this.stacks = stacks.toArray(NO_STACKS);
+		this.stackX = new float[this.stacks.length];
+
+		List<List<Stack>> buckets = new ArrayList<List<Stack>>(COLUMN_COUNT);
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			buckets.add(new ArrayList<Stack>());
+		}
+
+		for (int i = 0; i < this.stacks.length; i++) {
+			Stack stack = this.stacks[i];
+			stackX[i] = stack.getX();
+
+			// A pointer one unit wide collides with the stack anywhere in
+			// (x - 1, x + width)
+			int first = column(stack.getX() - 1);
+			int last = column(stack.getX() + stack.getWidth());
+			for (int column = first; column <= last; column++) {
+				buckets.get(column).add(stack);
+			}
+		}
+
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			columns[i] = buckets.get(i).toArray(NO_STACKS);
+		}
+		return true;
+	}
+
+	/**
+	 * @param x
+	 * @return the stacks that may contain the x coordinate, in board order
+	 */
+	Stack[] getStacksAt(float x) {
+		return columns[column(x)];
+	}
+
+	/**
+	 * @param stacks
+	 * @return true if the same stacks are at the same x positions as when the
+	 *         index was built
+	 */
+	private boolean isValid(List<Stack> stacks) {
+		if (stacks.size() != this.stacks.length) {
+			return false;
+		}
+		for (int i = 0; i < this.stacks.length; i++) {
+			Stack stack = stacks.get(i);
+			if (stack != this.stacks[i] || stack.getX() != stackX[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int column(float x) {
+		return Math.max(0, Math.min(COLUMN_COUNT - 1, (int) Math.floor(x / COLUMN_WIDTH)));
+	}
+
+}
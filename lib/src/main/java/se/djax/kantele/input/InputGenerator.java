@@ -1,18 +1,16 @@
 package se.djax.kantele.input;
 
-import se.djax.kantele.Vector2;
-
+/**
+ * A source of input from the player, e.g. a mouse or a touch screen
+ *
+ */
 public interface InputGenerator {
 
 	/**
-	 * @return should return true when screen are touched/mouse button is held down
-	 */
-	boolean isTouched();
-
-	/**
-	 * @return the position of touched point/mouse pointer in internal target
-	 *         resolution space
+	 * @return the queue the input events are written to. It is read by
+	 *         {@link InputManager} on the thread updating the game and written by
+	 *         one other thread at a time
 	 */
-	Vector2 getPointerInWorldCoordinates();
+	InputQueue getInputQueue();
 
 }
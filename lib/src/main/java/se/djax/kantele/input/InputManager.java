@@ -1,10 +1,8 @@
 package se.djax.kantele.input;
 
-import java.util.List;
-
 import se.djax.kantele.Entity;
-import se.djax.kantele.Vector2;
 import se.djax.kantele.model.Card;
+import se.djax.kantele.model.GameBoard;
 import se.djax.kantele.stack.Stack;
 
 public class InputManager {
@@ -17,10 +15,10 @@ public class InputManager {
 	/**
 	 * The maximum time between clicks to be registered as a double click
 	 */
-	private static final float DOUBLE_CLICK_TOLERANCE = 1;
+	private static final long DOUBLE_CLICK_TOLERANCE = 1_000_000_000L;
 
 	private final Entity pointer;
-	private final InputGenerator inputGenerator;
+	private final InputQueue queue;
 
 	/**
 	 * The current card at the pointer location (If none = null)
@@ -32,127 +30,181 @@ public class InputManager {
 	 */
 	private Stack hoverStack;
 
-	// Old states used for detecting rising/falling edges
+	/**
+	 * Stacks by screen column, used to find the stack under the pointer
+	 */
+	private final HoverIndex hoverIndex;
+
+	// Pointer position and board hash when the hovers were last found
+	private float hoverX = Float.NaN;
+	private float hoverY = Float.NaN;
+	private long hoverHash;
+
+	// State of the gesture being made
+	private boolean isTouched;
 	private boolean isDragged;
-	private boolean isDraggedOld;
-	private boolean isTouchedOld;
 
-	// Helper variables used for detecting correct event
-	private final Vector2 clickStartPosition;
-	private float timeSinceClicked;
+	/**
+	 * Where the screen was touched, the cards there are the ones picked by a drag
+	 */
+	private final Entity pressPoint;
+
+	// Time of the last click on a card, used for detecting double clicks
+	private boolean hasClicked;
+	private long lastClickTime;
 
 	public InputManager(InputGenerator inputGenerator) {
 		this.pointer = new Entity();
-		this.inputGenerator = inputGenerator;
-		clickStartPosition = new Vector2();
+		this.queue = inputGenerator.getInputQueue();
+		this.pressPoint = new Entity();
+		hoverIndex = new HoverIndex();
 
 		// Just set sizes to something small
 		pointer.setHeight(1);
 		pointer.setWidth(1);
+		pressPoint.setHeight(1);
+		pressPoint.setWidth(1);
 	}
 
 	/**
-	 * Main method called every frame
+	 * Main method called every frame. Handles all input events since the last
+	 * update in the order they happened, so gestures shorter than an update are
+	 * not lost
 	 * 
-	 * @param delta
-	 *            the time since the last update in seconds
+	 * @param board
+	 * @param listener
+	 *            receives the actions of the player
 	 */
-	public void update(float delta, InputListener listener) {
-
-		updatePointer();
-		updateTouchStatus(delta, listener);
-		updateDraggedStatus(listener);
-
-		// Save state of last frame
-		isTouchedOld = inputGenerator.isTouched();
-		isDraggedOld = isDragged;
+	public void update(GameBoard board, InputListener listener) {
+		while (queue.next()) {
+			pointer.setX(queue.getX());
+			pointer.setY(queue.getY());
+
+			switch (queue.getType()) {
+			case InputQueue.PRESS:
+				onPress();
+				break;
+			case InputQueue.RELEASE:
+				onRelease(board, queue.getTime(), listener);
+				break;
+			default:
+				onMove(board, listener);
+				break;
+			}
+		}
 	}
 
 	/**
-	 * Update pointer to current pointer location
-	 * 
-	 * @param renderer
+	 * Update current card/stack under the pointer if any. Nothing is done if
+	 * neither the pointer nor the board has changed since the last update
 	 */
-	private void updatePointer() {
-		Vector2 pos = inputGenerator.getPointerInWorldCoordinates();
-		pointer.setX(pos.getX());
-		pointer.setY(pos.getY());
+	public void updateHovers(GameBoard board) {
+		boolean rebuilt = hoverIndex.update(board.getStacks());
+		if (!rebuilt && pointer.getX() == hoverX && pointer.getY() == hoverY && board.getHash() == hoverHash) {
+			return;
+		}
+		hoverX = pointer.getX();
+		hoverY = pointer.getY();
+		hoverHash = board.getHash();
+		findHovers(pointer);
 	}
 
 	/**
-	 * Update current card/stack under the pointer if any
+	 * Find the card and stack at a point
+	 * 
+	 * @param point
 	 */
-	public void updateHovers(List<Stack> stacks) {
+	private void findHovers(Entity point) {
 		hoverCard = null;
 		hoverStack = null;
 
-		for (Stack stack : stacks) {
-			if (stack.colliding(pointer)) {
+		for (Stack stack : hoverIndex.getStacksAt(point.getX())) {
+			if (stack.colliding(point)) {
 				hoverStack = stack;
-				for (Card card : stack.getCards()) {
-					if (card.colliding(pointer)) {
-						hoverCard = card;
-					}
+				Card card = stack.getCardAt(point);
+				if (card != null) {
+					hoverCard = card;
 				}
 			}
 		}
 	}
 
+	private void onPress() {
+		if (isTouched) {
+			// Another button while one is held down
+			return;
+		}
+		isTouched = true;
+		pressPoint.setX(pointer.getX());
+		pressPoint.setY(pointer.getY());
+	}
+
 	/**
-	 * Detect and fire click events
+	 * Detect and fire drag events
 	 * 
-	 * @param delta
-	 *            time since last frame
-	 * @param renderer
+	 * @param board
+	 * @param listener
 	 */
-	private void updateTouchStatus(float delta, InputListener listener) {
-		timeSinceClicked += delta;
+	private void onMove(GameBoard board, InputListener listener) {
+		if (!isTouched || isDragged || distanceFromPress() <= DRAGGED_TOLERANCE) {
+			return;
+		}
+		isDragged = true;
+
+		// The pointer has already moved away from the cards to pick
+		hoverIndex.update(board.getStacks());
+		findHovers(pressPoint);
+		hoverX = Float.NaN;
+		if (hoverStack != null && hoverCard != null) {
+			listener.onDraggedStart(hoverStack, hoverCard);
+		}
+	}
 
-		// on touch down
-		if (inputGenerator.isTouched() && !isTouchedOld) {
-			clickStartPosition.set(pointer.getX(), pointer.getY());
+	/**
+	 * Detect and fire click and drag stop events
+	 * 
+	 * @param board
+	 * @param time
+	 *            when the pointer was released
+	 * @param listener
+	 */
+	private void onRelease(GameBoard board, long time, InputListener listener) {
+		if (!isTouched) {
+			return;
 		}
+		isTouched = false;
+		updateHovers(board);
 
-		// On touch up
-		if (!inputGenerator.isTouched() && isTouchedOld) {
-			if (!isDraggedOld && hoverStack != null) {
+		if (isDragged) {
+			isDragged = false;
+			listener.onDraggedStop(hoverStack);
+			return;
+		}
 
-				// Clicked on a stack
-				listener.onStackClicked(hoverStack);
-				if (hoverCard != null) {
+		if (hoverStack != null) {
 
-					// Clicked on a card
-					listener.onCardClicked(hoverStack, hoverCard);
+			// Clicked on a stack
+			listener.onStackClicked(hoverStack);
+			if (hoverCard != null) {
 
-					// Was it a double click?
-					if (timeSinceClicked < DOUBLE_CLICK_TOLERANCE) {
-						listener.onCardDoubleClicked(hoverStack, hoverCard);
-					}
+				// Clicked on a card
+				listener.onCardClicked(hoverStack, hoverCard);
 
-					timeSinceClicked = 0;
+				// Was it a double click?
+				if (hasClicked && time - lastClickTime < DOUBLE_CLICK_TOLERANCE) {
+					listener.onCardDoubleClicked(hoverStack, hoverCard);
 				}
-			}
-		}
-	}
 
-	/**
-	 * Detect and fire drag events
-	 * 
-	 * @param renderer
-	 */
-	private void updateDraggedStatus(InputListener listener) {
-		isDragged = inputGenerator.isTouched() && (clickStartPosition.distanceTo(pointer.getX(), pointer.getY()) > DRAGGED_TOLERANCE || isDragged);
-		// Start drag
-		if (isDragged && !isDraggedOld) {
-			if (hoverStack != null && hoverCard != null) {
-				listener.onDraggedStart(hoverStack, hoverCard);
+				hasClicked = true;
+				lastClickTime = time;
 			}
 		}
+	}
 
-		// Stop drag
-		if (!isDragged && isDraggedOld) {
-			listener.onDraggedStop(hoverStack);
-		}
+	private float distanceFromPress() {
+		float dx = pointer.getX() - pressPoint.getX();
+		float dy = pointer.getY() - pressPoint.getY();
+		return (float) Math.sqrt(dx * dx + dy * dy);
 	}
 
 	public Entity getPointer() {
@@ -0,0 +1,168 @@
+package se.djax.kantele.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input events in the order they happened, each with the position of the
+ * pointer in internal target resolution space and a timestamp from
+ * {@link System#nanoTime()}. The queue is a ring buffer for one thread writing
+ * events, e.g. the event dispatch thread, and one thread reading them, the one
+ * updating the game. Neither of them locks or allocates.
+ * <p>
+ * Events are read with {@link InputQueue#next()} and the getters of the
+ * current event:
+ *
+ * <pre>
+ * while (queue.next()) {
+ * 	handle(queue.getType(), queue.getX(), queue.getY(), queue.getTime());
+ * }
+ * </pre>
+ *
+ */
+public final class InputQueue {
+
+	/**
+	 * The pointer has moved
+	 */
+	public static final int MOVE = 0;
+
+	/**
+	 * The screen is touched/the mouse button is pressed
+	 */
+	public static final int PRESS = 1;
+
+	/**
+	 * The screen is no longer touched/the mouse button is released
+	 */
+	public static final int RELEASE = 2;
+
+	private final int mask;
+	private final byte[] types;
+	private final float[] xs;
+	private final float[] ys;
+	private final long[] times;
+
+	/**
+	 * Number of events written, published after the event
+	 */
+	private final AtomicLong written = new AtomicLong();
+
+	/**
+	 * Number of events read, published when the slot of the last one may be
+	 * written again
+	 */
+	private final AtomicLong read = new AtomicLong();
+
+	// Only used by the writing thread
+	private long writePosition;
+	private long readCache;
+
+	// Only used by the reading thread, the index of the current event or -1
+	private long readPosition;
+	private int current = -1;
+
+	/**
+	 * Events dropped because the queue was full, only written by the writing
+	 * thread
+	 */
+	private volatile long dropped;
+
+	/**
+	 * @param capacity
+	 *            the number of events that can wait to be read, a power of two
+	 */
+	public InputQueue(int capacity) {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+		}
+		this.mask = capacity - 1;
+		this.types = new byte[capacity];
+		this.xs = new float[capacity];
+		this.ys = new float[capacity];
+		this.times = new long[capacity];
+	}
+
+	/**
+	 * Add an event, only to be called by the writing thread
+	 *
+	 * @param type
+	 *            {@link InputQueue#MOVE}, {@link InputQueue#PRESS} or
+	 *            {@link InputQueue#RELEASE}
+	 * @param x
+	 * @param y
+	 * @param time
+	 *            when the event happened in {@link System#nanoTime()} time
+	 * @return false if the queue was full and the event was dropped
+	 */
+	public boolean offer(int type, float x, float y, long time) {
+		if (writePosition - readCache > mask) {
+			readCache = read.get();
+			if (writePosition - readCache > mask) {
+				dropped++;
+				return false;
+			}
+		}
+
+		int i = (int) writePosition & mask;
+		types[i] = (byte) type;
+		xs[i] = x;
+		ys[i] = y;
+		times[i] = time;
+		written.lazySet(++writePosition);
+		return true;
+	}
+
+	/**
+	 * Move on to the next event, only to be called by the reading thread. The
+	 * previous event can not be read after this
+	 *
+	 * @return true if there is a next event, false if all events have been read
+	 */
+	public boolean next() {
+		if (current >= 0) {
+			read.lazySet(++readPosition);
+		}
+		if (readPosition == written.get()) {
+			current = -1;
+			return false;
+		}
+		current = (int) readPosition & mask;
+		return true;
+	}
+
+	/**
+	 * @return the type of the current event
+	 */
+	public int getType() {
+		return types[current];
+	}
+
+	/**
+	 * @return the x coordinate of the pointer at the current event
+	 */
+	public float getX() {
+		return xs[current];
+	}
+
+	/**
+	 * @return the y coordinate of the pointer at the current event
+	 */
+	public float getY() {
+		return ys[current];
+	}
+
+	/**
+	 * @return when the current event happened in {@link System#nanoTime()} time
+	 */
+	public long getTime() {
+		return times[current];
+	}
+
+	/**
+	 * @return the number of events dropped because the queue was full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+}
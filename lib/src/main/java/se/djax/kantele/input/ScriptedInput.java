@@ -0,0 +1,65 @@
+package se.djax.kantele.input;
+
+/**
+ * An input generator that is fed programmatically instead of by a mouse or a
+ * touch screen. Every call is an event stamped with the current time, and all
+ * events since the last update are handled in order by the next one, so a
+ * press and a release before the same update are a click
+ *
+ */
+public class ScriptedInput implements InputGenerator {
+
+	/**
+	 * Events that can be waiting for the next update. Kept small since every
+	 * session of a {@link se.djax.kantele.session.SessionHost} has its own
+	 */
+	private static final int CAPACITY = 64;
+
+	private final InputQueue queue = new InputQueue(CAPACITY);
+
+	private float x;
+	private float y;
+
+	/**
+	 * Move the pointer to a position in internal target resolution space
+	 * 
+	 * @param x
+	 * @param y
+	 */
+	public void moveTo(float x, float y) {
+		this.x = x;
+		this.y = y;
+		offer(InputQueue.MOVE);
+	}
+
+	/**
+	 * Start touching the screen/hold the mouse button down
+	 */
+	public void press() {
+		offer(InputQueue.PRESS);
+	}
+
+	/**
+	 * Stop touching the screen/release the mouse button
+	 */
+	public void release() {
+		offer(InputQueue.RELEASE);
+	}
+
+	private void offer(int type) {
+		if (!queue.offer(type, x, y, System.nanoTime())) {
+			throw new IllegalStateException("More than " + CAPACITY + " events before an update");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.input.InputGenerator#getInputQueue()
+	 */
+	@Override
+	public InputQueue getInputQueue() {
+		return queue;
+	}
+
+}
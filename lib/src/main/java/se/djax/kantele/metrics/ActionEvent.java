@@ -0,0 +1,33 @@
+package se.djax.kantele.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of handling one action of the player, see
+ * {@link ActionRecorder}
+ *
+ */
+@Name("se.djax.kantele.Action")
+@Label("Player Action")
+@Description("Handling of a click or drag of the player")
+@Category("Kantele")
+@StackTrace(false)
+final class ActionEvent extends Event {
+
+	@Label("Action")
+	String action;
+
+	@Label("Stack")
+	@Description("Index of the stack, see PackedBoard, or -1 if there is none")
+	int stack;
+
+	@Label("Card")
+	@Description("Id of the card or -1 if there is none")
+	int card;
+
+}
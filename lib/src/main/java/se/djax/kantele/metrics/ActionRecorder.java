@@ -0,0 +1,113 @@
+package se.djax.kantele.metrics;
+
+import jdk.jfr.EventType;
+
+import se.djax.kantele.input.InputListener;
+import se.djax.kantele.model.Card;
+import se.djax.kantele.stack.Stack;
+
+/**
+ * Passes every action of the player on to another listener and records the
+ * handling of it as an {@link ActionEvent} when the flight recorder is running
+ *
+ */
+public final class ActionRecorder implements InputListener {
+
+	private static final EventType TYPE = EventType.getEventType(ActionEvent.class);
+
+	private final InputListener listener;
+
+	/**
+	 * @param listener
+	 *            the listener handling the actions
+	 */
+	public ActionRecorder(InputListener listener) {
+		this.listener = listener;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.input.InputListener#onCardClicked(se.djax.kantele.stack.Stack, se.djax.kantele.model.Card)
+	 */
+	@Override
+	public void onCardClicked(Stack stack, Card card) {
+		ActionEvent event = begin();
+		listener.onCardClicked(stack, card);
+		commit(event, "cardClicked", stack, card);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.input.InputListener#onCardDoubleClicked(se.djax.kantele.stack.Stack, se.djax.kantele.model.Card)
+	 */
+	@Override
+	public void onCardDoubleClicked(Stack stack, Card card) {
+		ActionEvent event = begin();
+		listener.onCardDoubleClicked(stack, card);
+		commit(event, "cardDoubleClicked", stack, card);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.input.InputListener#onStackClicked(se.djax.kantele.stack.Stack)
+	 */
+	@Override
+	public void onStackClicked(Stack stack) {
+		ActionEvent event = begin();
+		listener.onStackClicked(stack);
+		commit(event, "stackClicked", stack, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.input.InputListener#onDraggedStart(se.djax.kantele.stack.Stack, se.djax.kantele.model.Card)
+	 */
+	@Override
+	public void onDraggedStart(Stack stack, Card card) {
+		ActionEvent event = begin();
+		listener.onDraggedStart(stack, card);
+		commit(event, "draggedStart", stack, card);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.input.InputListener#onDraggedStop(se.djax.kantele.stack.Stack)
+	 */
+	@Override
+	public void onDraggedStop(Stack stack) {
+		ActionEvent event = begin();
+		listener.onDraggedStop(stack);
+		commit(event, "draggedStop", stack, null);
+	}
+
+	/**
+	 * @return the started event or null if the event is not recorded
+	 */
+	private static ActionEvent begin() {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		ActionEvent event = new ActionEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * The stack index and card id do not change during an action, so they are
+	 * only read when the event is recorded
+	 */
+	private static void commit(ActionEvent event, String action, Stack stack, Card card) {
+		if (event != null && event.shouldCommit()) {
+			event.action = action;
+			event.stack = stack == null ? -1 : stack.getIndex();
+			event.card = card == null ? -1 : card.getId();
+			event.commit();
+		}
+	}
+
+}
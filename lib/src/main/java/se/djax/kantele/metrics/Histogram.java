@@ -0,0 +1,208 @@
+package se.djax.kantele.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of non negative values, e.g. durations in nanoseconds.
+ * Every power of two is split in {@link Histogram#SUB_BUCKETS} buckets of equal
+ * width, so a percentile is accurate to about 6% of its value over the whole
+ * range of long with less than a thousand buckets.
+ * <p>
+ * Recording a value is a few atomic additions and can be done from any number
+ * of threads. The percentiles are read from the counts while values are being
+ * recorded, so they are not an exact snapshot.
+ *
+ */
+public final class Histogram implements HistogramMXBean {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Values below {@link Histogram#SUB_BUCKETS} have a bucket each, every larger
+	 * power of two up to 2^62 has {@link Histogram#SUB_BUCKETS} buckets
+	 */
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final String name;
+	private final String help;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param name
+	 *            name of the histogram in reports
+	 * @param help
+	 *            description of the recorded values
+	 */
+	public Histogram(String name, String help) {
+		this.name = name;
+		this.help = help;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getHelp() {
+		return help;
+	}
+
+	/**
+	 * @param value
+	 *            negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.getAndIncrement(index(value));
+		sum.add(value);
+
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Record the time since a call to {@link System#nanoTime()}
+	 *
+	 * @param startNanos
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see se.djax.kantele.metrics.HistogramMXBean#getCount()
+	 */
+	@Override
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the sum of all recorded values
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see se.djax.kantele.metrics.HistogramMXBean#getMax()
+	 */
+	@Override
+	public long getMax() {
+		return max.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see se.djax.kantele.metrics.HistogramMXBean#getMean()
+	 */
+	@Override
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) getSum() / count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see se.djax.kantele.metrics.HistogramMXBean#getP50()
+	 */
+	@Override
+	public long getP50() {
+		return getPercentile(0.5);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see se.djax.kantele.metrics.HistogramMXBean#getP99()
+	 */
+	@Override
+	public long getP99() {
+		return getPercentile(0.99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see se.djax.kantele.metrics.HistogramMXBean#getP999()
+	 */
+	@Override
+	public long getP999() {
+		return getPercentile(0.999);
+	}
+
+	/**
+	 * @param quantile
+	 *            between 0 and 1
+	 * @return the upper bound of the bucket holding the value at the quantile, at
+	 *         most the largest recorded value, or 0 if nothing has been recorded
+	 */
+	public long getPercentile(double quantile) {
+		if (quantile < 0 || quantile > 1) {
+			throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+		}
+
+		long[] snapshot = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(upperBound(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * @return the bucket of a non negative value
+	 */
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return the largest value of a bucket
+	 */
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,41 @@
+package se.djax.kantele.metrics;
+
+/**
+ * Management interface of a {@link Histogram}, registered by
+ * {@link Metrics#registerMBeans()}. The values of the timers in
+ * {@link Metrics} are in nanoseconds
+ *
+ */
+public interface HistogramMXBean {
+
+	/**
+	 * @return the number of recorded values
+	 */
+	long getCount();
+
+	/**
+	 * @return the largest recorded value
+	 */
+	long getMax();
+
+	/**
+	 * @return the average of the recorded values
+	 */
+	double getMean();
+
+	/**
+	 * @return the median
+	 */
+	long getP50();
+
+	/**
+	 * @return the 99th percentile
+	 */
+	long getP99();
+
+	/**
+	 * @return the 99.9th percentile
+	 */
+	long getP999();
+
+}
@@ -0,0 +1,103 @@
+package se.djax.kantele.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timers of the parts of a frame, recorded in nanoseconds with
+ * {@link System#nanoTime()}. The timers are shared by every game in the JVM,
+ * e.g. all sessions of a {@link se.djax.kantele.session.SessionHost}.
+ * <p>
+ * The timers can be read over JMX after {@link Metrics#registerMBeans()} and
+ * in the Prometheus text format, see {@link MetricsServer}.
+ *
+ */
+public final class Metrics {
+
+	/**
+	 * Domain of the registered MBeans
+	 */
+	public static final String DOMAIN = "se.djax.kantele";
+
+	public static final Histogram UPDATE = new Histogram("kantele_update", "One update of the game logic");
+	public static final Histogram INPUT = new Histogram("kantele_input", "Input handling of one update");
+	public static final Histogram HOVERS = new Histogram("kantele_hovers", "Finding the card and stack under the pointer in one update");
+	public static final Histogram RENDER = new Histogram("kantele_render", "Rendering one frame including presenting it");
+	public static final Histogram PRESENT = new Histogram("kantele_present", "Presenting one rendered frame on the screen");
+	public static final Histogram FRAME = new Histogram("kantele_frame", "One frame of the render thread of the game loop");
+	public static final Histogram SESSION_TICK = new Histogram("kantele_session_tick", "Updating every session of a session host once");
+
+	private static final List<Histogram> HISTOGRAMS = Collections.unmodifiableList(Arrays.asList(UPDATE, INPUT, HOVERS, RENDER, PRESENT, FRAME, SESSION_TICK));
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private static boolean registered;
+
+	private Metrics() {
+	}
+
+	/**
+	 * @return all timers
+	 */
+	public static List<Histogram> getHistograms() {
+		return HISTOGRAMS;
+	}
+
+	/**
+	 * Register every timer with the platform MBean server as
+	 * se.djax.kantele:type=Histogram,name=&lt;name&gt;. Does nothing if they are
+	 * already registered
+	 */
+	public static synchronized void registerMBeans() {
+		if (registered) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (Histogram histogram : HISTOGRAMS) {
+				server.registerMBean(histogram, new ObjectName(DOMAIN + ":type=Histogram,name=" + histogram.getName()));
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Failed to register metrics", e);
+		}
+		registered = true;
+	}
+
+	/**
+	 * Write every timer as a summary in seconds in the Prometheus text format
+	 *
+	 * @param out
+	 */
+	public static void writePrometheus(StringBuilder out) {
+		for (Histogram histogram : HISTOGRAMS) {
+			String name = histogram.getName() + "_seconds";
+			out.append("# HELP ").append(name).append(' ').append(histogram.getHelp()).append('\n');
+			out.append("# TYPE ").append(name).append(" summary\n");
+			writeQuantile(out, name, "0.5", histogram.getP50());
+			writeQuantile(out, name, "0.99", histogram.getP99());
+			writeQuantile(out, name, "0.999", histogram.getP999());
+			writeSample(out, name + "_sum", histogram.getSum());
+			out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+
+			out.append("# HELP ").append(name).append("_max Longest time of ").append(histogram.getHelp().toLowerCase(Locale.ROOT)).append('\n');
+			out.append("# TYPE ").append(name).append("_max gauge\n");
+			writeSample(out, name + "_max", histogram.getMax());
+		}
+	}
+
+	private static void writeQuantile(StringBuilder out, String name, String quantile, long nanos) {
+		writeSample(out, name + "{quantile=\"" + quantile + "\"}", nanos);
+	}
+
+	private static void writeSample(StringBuilder out, String name, long nanos) {
+		out.append(name).append(' ').append(nanos / NANOS_PER_SECOND).append('\n');
+	}
+
+}
@@ -0,0 +1,75 @@
+package se.djax.kantele.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves {@link Metrics} in the Prometheus text format at /metrics with the
+ * HTTP server of the JDK. Only the loopback interface is bound, so the metrics
+ * are not visible from other machines. Requests are handled one at a time on
+ * the thread of the server
+ *
+ */
+public final class MetricsServer {
+
+	public static final String PATH = "/metrics";
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final HttpServer server;
+
+	/**
+	 * Start serving the metrics
+	 *
+	 * @param port
+	 *            the port on the loopback interface or 0 for any free port
+	 * @throws IOException
+	 *             if the port can not be bound
+	 */
+	public MetricsServer(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext(PATH, this::handle);
+		server.start();
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stop the server immediately
+	 */
+	public void close() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			StringBuilder text = new StringBuilder(4096);
+			Metrics.writePrometheus(text);
+			byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+}
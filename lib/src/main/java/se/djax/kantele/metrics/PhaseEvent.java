@@ -0,0 +1,73 @@
+package se.djax.kantele.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of one phase of a frame, recorded at the same places as
+ * the timers of {@link Metrics}. The events let hitches in a recording be
+ * matched with garbage collections and compilations at the same time.
+ * <p>
+ * When no recording is running no event is created, so that the frame path
+ * does not allocate even where the JIT compiler can not remove the event
+ * object. A continuous recording can keep only the slow phases by
+ * setting a threshold for the event in its settings
+ *
+ */
+@Name("se.djax.kantele.Phase")
+@Label("Game Phase")
+@Description("One phase of an update or a frame of the game")
+@Category("Kantele")
+@StackTrace(false)
+public final class PhaseEvent extends Event {
+
+	public static final String UPDATE = "update";
+	public static final String INPUT = "input";
+	public static final String HOVERS = "hovers";
+	public static final String RENDER = "render";
+	public static final String PRESENT = "present";
+
+	private static final EventType TYPE = EventType.getEventType(PhaseEvent.class);
+
+	@Label("Phase")
+	private final String phase;
+
+	private PhaseEvent(String phase) {
+		this.phase = phase;
+	}
+
+	/**
+	 * Start timing a phase, ended with {@link PhaseEvent#finish(PhaseEvent)}
+	 *
+	 * @param phase
+	 *            one of the phase constants
+	 * @return the started event or null if the event is not recorded
+	 */
+	public static PhaseEvent start(String phase) {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		PhaseEvent event = new PhaseEvent(phase);
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * End timing a phase and record it
+	 *
+	 * @param event
+	 *            the event returned by {@link PhaseEvent#start(String)}, may be
+	 *            null
+	 */
+	public static void finish(PhaseEvent event) {
+		if (event != null) {
+			event.commit();
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package se.djax.kantele.model;
+
+import se.djax.kantele.stack.Stack;
+
+/**
+ * State shared by a {@link GameBoard} and all its stacks and cards, kept up to
+ * date by the stacks and cards themselves whenever they change. Holds the
+ * Zobrist hash of the position, see {@link Zobrist}, and the number of face
+ * down cards
+ *
+ */
+public final class BoardState {
+
+	private long hash;
+	private int faceDownCount;
+
+	BoardState() {
+	}
+
+	/**
+	 * Add or remove a card in a stack from the hash. Called by {@link Stack}
+	 *
+	 * @param id
+	 *            id of the card
+	 * @param stack
+	 *            index of the stack, see {@link PackedBoard}
+	 * @param below
+	 *            id of the card directly below or -1 if none
+	 */
+	public void toggleCard(int id, int stack, int below) {
+		hash ^= Zobrist.card(id, stack, below);
+	}
+
+	/**
+	 * Called by {@link Card} when it is turned
+	 *
+	 * @param id
+	 *            id of the card
+	 * @param faceDown
+	 *            true if the card was turned face down
+	 */
+	void toggleFaceDown(int id, boolean faceDown) {
+		hash ^= Zobrist.faceDown(id);
+		faceDownCount += faceDown ? 1 : -1;
+	}
+
+	/**
+	 * @return the Zobrist hash of the position
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return the number of face down cards on the board
+	 */
+	public int getFaceDownCount() {
+		return faceDownCount;
+	}
+
+}
@@ -16,6 +16,16 @@ public class Card extends Entity {
 	public static final float WIDTH = Renderer.RENDER_WIDTH / 11f;
 	public static final float HEIGHT = WIDTH * 1.5f;
 
+	/**
+	 * Number of cards in a standard deck, also the number of distinct card ids
+	 */
+	public static final int DECK_SIZE = 52;
+
+	/**
+	 * Number of ranks in every suit, used when converting to and from card ids
+	 */
+	public static final int RANK_COUNT = 13;
+
 	public enum Suit {
 		Diamond(Color.Red), Spades(Color.Black), Hearts(Color.Red), Clubs(Color.Black);
 
@@ -52,6 +62,11 @@ public class Card extends Entity {
 	private final Rank rank;
 	private boolean faceDown;
 
+	/**
+	 * The state of the board the card belongs to if any
+	 */
+	private BoardState state;
+
 	private Card(Suit suit, Rank rank) {
 		this.suit = suit;
 		this.rank = rank;
@@ -78,10 +93,33 @@ public class Card extends Entity {
 		return rank;
 	}
 
+	/**
+	 * @return a unique id of the card between 0 and {@link Card#DECK_SIZE} - 1.
+	 *         The id is the index of the card in an unshuffled standard deck
+	 */
+	public int getId() {
+		return suit.ordinal() * RANK_COUNT + rank.ordinal();
+	}
+
 	public void setFaceDown(boolean b) {
+		if (state != null && b != faceDown) {
+			state.toggleFaceDown(getId(), b);
+		}
 		this.faceDown = b;
 	}
 
+	/**
+	 * Make the card part of a board so that turning it updates the board state
+	 * 
+	 * @param state
+	 */
+	void setState(BoardState state) {
+		this.state = state;
+		if (faceDown) {
+			state.toggleFaceDown(getId(), true);
+		}
+	}
+
 	public boolean isFaceDown() {
 		return faceDown;
 	}
@@ -115,4 +153,18 @@ public class Card extends Entity {
 		return cards;
 	}
 
+	/**
+	 * @param deal
+	 *            the deal number, see {@link Deal}
+	 * @return a standard deck of 52 cards shuffled for the deal
+	 */
+	public static List<Card> createStandardDeck(long deal) {
+		List<Card> deck = createStandardDeck(false);
+		List<Card> cards = new ArrayList<Card>(DECK_SIZE);
+		for (int id : Deal.shuffle(deal)) {
+			cards.add(deck.get(id));
+		}
+		return cards;
+	}
+
 }
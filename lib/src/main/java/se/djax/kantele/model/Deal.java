@@ -0,0 +1,60 @@
+package se.djax.kantele.model;
+
+/**
+ * Deals identified by a 64 bit deal number. The deck of a deal is shuffled with
+ * a SplitMix64 generator seeded by the deal number, so every deal can be
+ * created directly from its number without generating any other deal first,
+ * and ranges of deals can be split between threads freely. The same deal
+ * number always gives the same deal on every platform and version of Java.
+ * <p>
+ * The shuffle writes card ids to a primitive array, see {@link Card#getId()},
+ * so no cards are needed to deal a {@link PackedBoard}.
+ *
+ */
+public final class Deal {
+
+	/**
+	 * Increment of the SplitMix64 generator
+	 */
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	private Deal() {
+	}
+
+	/**
+	 * @param deal
+	 *            the deal number
+	 * @return the card ids of the deck of the deal from bottom to top
+	 */
+	public static int[] shuffle(long deal) {
+		int[] ids = new int[Card.DECK_SIZE];
+		shuffle(deal, ids);
+		return ids;
+	}
+
+	/**
+	 * Write the card ids of the deck of a deal from bottom to top
+	 *
+	 * @param deal
+	 *            the deal number
+	 * @param ids
+	 *            array of at least {@link Card#DECK_SIZE} ids
+	 */
+	public static void shuffle(long deal, int[] ids) {
+		for (int i = 0; i < Card.DECK_SIZE; i++) {
+			ids[i] = i;
+		}
+
+		// Fisher-Yates from the top of the deck. The index is taken from the high 32
+		// bits by multiplication instead of division, the bias is below 2^-25
+		long state = Zobrist.splitMix(deal);
+		for (int i = Card.DECK_SIZE; i > 1; i--) {
+			long random = Zobrist.splitMix(state += GAMMA) >>> 32;
+			int j = (int) ((random * i) >>> 32);
+			int tmp = ids[i - 1];
+			ids[i - 1] = ids[j];
+			ids[j] = tmp;
+		}
+	}
+
+}
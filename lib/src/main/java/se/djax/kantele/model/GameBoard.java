@@ -3,8 +3,8 @@ package se.djax.kantele.model;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
-import se.djax.kantele.model.Card.Rank;
 import se.djax.kantele.model.Card.Suit;
 import se.djax.kantele.renderer.Renderer;
 import se.djax.kantele.stack.Foundation;
@@ -31,38 +31,118 @@ public class GameBoard {
 	 */
 	private final List<Stack> stacks;
 
+	/**
+	 * State updated by all stacks and cards on the board
+	 */
+	private final BoardState state = new BoardState();
+
+	/**
+	 * Create a board with a random deal
+	 */
 	public GameBoard() {
+		this(ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Create a board with the given deal
+	 * 
+	 * @param deal
+	 *            the deal number, see {@link Deal}. The same number always gives
+	 *            the same deal
+	 */
+	public GameBoard(long deal) {
+		this(Card.createStandardDeck(deal));
+	}
+
+	private GameBoard(List<Card> cards) {
+		setState(cards);
+
 		stacks = new ArrayList<Stack>();
 		tableau = new Tableau[TABLEAU_COUNT];
 
 		// Create as many foundations as there are suits in a deck of cards
 		foundations = new Foundation[Suit.values().length];
 
-		createFoundations();
-		createDeck(Card.createStandardDeck(true));
+		createFoundations(null);
+		createDeck(cards);
 
 		pickedDeck = new Pile(Renderer.RENDER_WIDTH - Card.WIDTH * 2.2f, Card.HEIGHT / 2, true, new ArrayList<Card>());
+		pickedDeck.attach(state, PackedBoard.PICKED_DECK);
 		stacks.add(pickedDeck);
 
 		addCardsToTableaus();
 	}
 
+	/**
+	 * Create a board where every stack already contains the given cards, e.g. when
+	 * restoring a position from a {@link PackedBoard}. The cards are placed as they
+	 * are without taking any stack rules into account
+	 * 
+	 * @param deckCards
+	 * @param pickedDeckCards
+	 * @param tableauCards
+	 *            the cards of each tableau from left to right
+	 * @param foundationCards
+	 *            the cards of each foundation
+	 */
+	GameBoard(List<Card> deckCards, List<Card> pickedDeckCards, List<List<Card>> tableauCards, List<List<Card>> foundationCards) {
+		setState(deckCards);
+		setState(pickedDeckCards);
+		for (List<Card> cards : tableauCards) {
+			setState(cards);
+		}
+		for (List<Card> cards : foundationCards) {
+			setState(cards);
+		}
+
+		stacks = new ArrayList<Stack>();
+		tableau = new Tableau[TABLEAU_COUNT];
+		foundations = new Foundation[Suit.values().length];
+
+		createFoundations(foundationCards);
+		createDeck(deckCards);
+
+		pickedDeck = new Pile(Renderer.RENDER_WIDTH - Card.WIDTH * 2.2f, Card.HEIGHT / 2, true, pickedDeckCards);
+		pickedDeck.attach(state, PackedBoard.PICKED_DECK);
+		stacks.add(pickedDeck);
+
+		for (int pile = 0; pile < tableau.length; pile++) {
+			tableau[pile] = new Tableau(Card.WIDTH * 1.20f * pile, Renderer.RENDER_HEIGHT - Card.HEIGHT, tableauCards.get(pile));
+			tableau[pile].attach(state, PackedBoard.TABLEAU + pile);
+			stacks.add(tableau[pile]);
+		}
+	}
+
+	private void setState(List<Card> cards) {
+		for (Card card : cards) {
+			card.setState(state);
+		}
+	}
+
 	/**
 	 * Create the four foundations
+	 * 
+	 * @param cards
+	 *            the initial cards of every foundation or null if they should be
+	 *            empty
 	 */
-	private void createFoundations() {
-		foundations[0] = new Foundation(Renderer.RENDER_WIDTH - Card.WIDTH, Renderer.RENDER_HEIGHT - Card.HEIGHT);
-		stacks.add(foundations[0]);
-		foundations[1] = new Foundation(Renderer.RENDER_WIDTH - Card.WIDTH * 2.2f, Renderer.RENDER_HEIGHT - Card.HEIGHT);
-		stacks.add(foundations[1]);
-		foundations[2] = new Foundation(Renderer.RENDER_WIDTH - Card.WIDTH, Renderer.RENDER_HEIGHT - Card.HEIGHT * 2.2f);
-		stacks.add(foundations[2]);
-		foundations[3] = new Foundation(Renderer.RENDER_WIDTH - Card.WIDTH * 2.2f, Renderer.RENDER_HEIGHT - Card.HEIGHT * 2.2f);
-		stacks.add(foundations[3]);
+	private void createFoundations(List<List<Card>> cards) {
+		foundations[0] = createFoundation(Renderer.RENDER_WIDTH - Card.WIDTH, Renderer.RENDER_HEIGHT - Card.HEIGHT, cards, 0);
+		foundations[1] = createFoundation(Renderer.RENDER_WIDTH - Card.WIDTH * 2.2f, Renderer.RENDER_HEIGHT - Card.HEIGHT, cards, 1);
+		foundations[2] = createFoundation(Renderer.RENDER_WIDTH - Card.WIDTH, Renderer.RENDER_HEIGHT - Card.HEIGHT * 2.2f, cards, 2);
+		foundations[3] = createFoundation(Renderer.RENDER_WIDTH - Card.WIDTH * 2.2f, Renderer.RENDER_HEIGHT - Card.HEIGHT * 2.2f, cards, 3);
+	}
+
+	private Foundation createFoundation(float x, float y, List<List<Card>> cards, int index) {
+		Foundation foundation = cards == null ? new Foundation(x, y) : new Foundation(x, y, cards.get(index));
+		foundation.attach(state, PackedBoard.FOUNDATION + index);
+		stacks.add(foundation);
+		return foundation;
 	}
 
 	private void createDeck(List<Card> cards) {
 		deck = new Pile(Renderer.RENDER_WIDTH - Card.WIDTH, Card.HEIGHT / 2, false, cards);
+		deck.attach(state, PackedBoard.DECK);
 		stacks.add(deck);
 	}
 
@@ -87,6 +167,7 @@ public class GameBoard {
 			cards.add(card);
 
 			tableau[pile] = new Tableau(Card.WIDTH * 1.20f * pile, Renderer.RENDER_HEIGHT - Card.HEIGHT, cards);
+			tableau[pile].attach(state, PackedBoard.TABLEAU + pile);
 			stacks.add(tableau[pile]);
 		}
 	}
@@ -103,6 +184,13 @@ public class GameBoard {
 		return foundations;
 	}
 
+	/**
+	 * @return the tableaus from left to right
+	 */
+	public Stack[] getTableaus() {
+		return tableau;
+	}
+
 	public Stack getDeck() {
 		return deck;
 	}
@@ -130,6 +218,93 @@ public class GameBoard {
 		pickedDeck.removeAll();
 	}
 
+	/**
+	 * @param index
+	 *            index of the stack, see {@link PackedBoard}
+	 * @return the stack
+	 */
+	public Stack getStack(int index) {
+		if (index == PackedBoard.DECK) {
+			return deck;
+		}
+		if (index == PackedBoard.PICKED_DECK) {
+			return pickedDeck;
+		}
+		if (index < PackedBoard.FOUNDATION) {
+			return tableau[index - PackedBoard.TABLEAU];
+		}
+		return foundations[index - PackedBoard.FOUNDATION];
+	}
+
+	/**
+	 * Apply a move, see {@link Move}. Only the moved cards are touched. Warning:
+	 * Rules are not taken into account
+	 * 
+	 * @param move
+	 */
+	public void apply(int move) {
+		switch (Move.type(move)) {
+		case Move.DRAW:
+			deck.moveTo(pickedDeck, 1);
+			pickedDeck.getTop().setFaceDown(false);
+			break;
+		case Move.RECYCLE:
+			resetDeck();
+			break;
+		case Move.MOVE:
+			getStack(Move.from(move)).moveTo(getStack(Move.to(move)), Move.count(move));
+			break;
+		case Move.FLIP:
+			getStack(Move.from(move)).getTop().setFaceDown(false);
+			break;
+		}
+	}
+
+	/**
+	 * Revert a move previously applied with {@link GameBoard#apply(int)}
+	 * 
+	 * @param move
+	 */
+	public void undo(int move) {
+		switch (Move.type(move)) {
+		case Move.DRAW:
+			pickedDeck.getTop().setFaceDown(true);
+			pickedDeck.moveTo(deck, 1);
+			break;
+		case Move.RECYCLE:
+			// Moving the cards one by one reverses their order again
+			while (!deck.isEmpty()) {
+				deck.moveTo(pickedDeck, 1);
+				pickedDeck.getTop().setFaceDown(false);
+			}
+			break;
+		case Move.MOVE:
+			getStack(Move.to(move)).moveTo(getStack(Move.from(move)), Move.count(move));
+			break;
+		case Move.FLIP:
+			getStack(Move.from(move)).getTop().setFaceDown(true);
+			break;
+		}
+	}
+
+	/**
+	 * @return the Zobrist hash of the position, kept up to date on every change
+	 *         and equal to {@link Zobrist#hash(PackedBoard)} of the packed board
+	 */
+	public long getHash() {
+		return state.getHash();
+	}
+
+	/**
+	 * @return true if every tableau card is face up, in which case the game can
+	 *         always be finished by moving cards to the foundations. Only the
+	 *         cards in the deck are face down then, so this is known without
+	 *         looking at the tableaus
+	 */
+	public boolean isDecided() {
+		return state.getFaceDownCount() == deck.size();
+	}
+
 	/**
 	 * @return true if every card is in the foundation stacks
 	 */
@@ -139,7 +314,7 @@ public class GameBoard {
 			cards += stack.size();
 		}
 
-		return cards == Suit.values().length * Rank.values().length;
+		return cards == Card.DECK_SIZE;
 	}
 
 }
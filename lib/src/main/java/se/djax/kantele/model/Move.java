@@ -0,0 +1,111 @@
+package se.djax.kantele.model;
+
+/**
+ * Helper for moves encoded as primitive ints so that they can be generated,
+ * stored and applied without any allocation. A move uses 15 bits: the type,
+ * the source stack, the target stack and the number of moved cards. Stacks are
+ * identified by their index in {@link PackedBoard}
+ *
+ */
+public final class Move {
+
+	/**
+	 * Pick the top card of the deck and put it face up on the picked deck
+	 */
+	public static final int DRAW = 0;
+
+	/**
+	 * Put all cards of the picked deck back in the empty deck
+	 */
+	public static final int RECYCLE = 1;
+
+	/**
+	 * Move one or more cards from the top of one stack to another
+	 */
+	public static final int MOVE = 2;
+
+	/**
+	 * Turn the top card of a stack face up
+	 */
+	public static final int FLIP = 3;
+
+	private static final int TYPE_BITS = 2;
+	private static final int STACK_BITS = 4;
+	private static final int STACK_MASK = (1 << STACK_BITS) - 1;
+	private static final int FROM_SHIFT = TYPE_BITS;
+	private static final int TO_SHIFT = FROM_SHIFT + STACK_BITS;
+	private static final int COUNT_SHIFT = TO_SHIFT + STACK_BITS;
+
+	private Move() {
+	}
+
+	/**
+	 * @return a move picking a card from the deck
+	 */
+	public static int draw() {
+		return DRAW | PackedBoard.DECK << FROM_SHIFT | PackedBoard.PICKED_DECK << TO_SHIFT | 1 << COUNT_SHIFT;
+	}
+
+	/**
+	 * @return a move restoring the picked deck to the deck
+	 */
+	public static int recycle() {
+		return RECYCLE | PackedBoard.PICKED_DECK << FROM_SHIFT | PackedBoard.DECK << TO_SHIFT;
+	}
+
+	/**
+	 * @param from
+	 *            index of the source stack
+	 * @param to
+	 *            index of the target stack
+	 * @param count
+	 *            number of cards from the top of the source stack
+	 * @return a move of cards between two stacks
+	 */
+	public static int move(int from, int to, int count) {
+		return MOVE | from << FROM_SHIFT | to << TO_SHIFT | count << COUNT_SHIFT;
+	}
+
+	/**
+	 * @param stack
+	 *            index of the stack
+	 * @return a move turning the top card of the stack face up
+	 */
+	public static int flip(int stack) {
+		return FLIP | stack << FROM_SHIFT | stack << TO_SHIFT | 1 << COUNT_SHIFT;
+	}
+
+	public static int type(int move) {
+		return move & ((1 << TYPE_BITS) - 1);
+	}
+
+	public static int from(int move) {
+		return (move >>> FROM_SHIFT) & STACK_MASK;
+	}
+
+	public static int to(int move) {
+		return (move >>> TO_SHIFT) & STACK_MASK;
+	}
+
+	public static int count(int move) {
+		return move >>> COUNT_SHIFT;
+	}
+
+	/**
+	 * @param move
+	 * @return a human readable description of the move
+	 */
+	public static String toString(int move) {
+		switch (type(move)) {
+		case DRAW:
+			return "draw";
+		case RECYCLE:
+			return "recycle";
+		case FLIP:
+			return "flip " + from(move);
+		default:
+			return "move " + count(move) + " from " + from(move) + " to " + to(move);
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package se.djax.kantele.model;
+
+import se.djax.kantele.stack.Foundation;
+import se.djax.kantele.stack.Tableau;
+
+/**
+ * Enumerates every legal move of a position into a caller owned int buffer, see
+ * {@link Move}. The rules are the ones of {@link Tableau} and
+ * {@link Foundation} on packed cards, the same moves the player can make by
+ * clicking and dragging. Nothing is allocated per call, so the generator can be
+ * used by bots, hints and searches at any rate.
+ * <p>
+ * The moves are generated in a fixed order: moves to foundations first, then
+ * moves to tableaus, flips, and finally drawing or recycling the deck.
+ * <p>
+ * A generator reuses its packed board when generating from a
+ * {@link GameBoard} and is not thread safe, use one generator per thread.
+ *
+ */
+public final class MoveGenerator {
+
+	/**
+	 * Upper bound of the number of legal moves in any position, the minimum size
+	 * of a move buffer
+	 */
+	public static final int MAX_MOVES = 256;
+
+	private final PackedBoard packed = new PackedBoard();
+
+	/**
+	 * @param board
+	 *            a board without draged cards, see
+	 *            {@link PackedBoard#read(GameBoard)}
+	 * @param moves
+	 *            buffer of at least {@link MoveGenerator#MAX_MOVES} moves
+	 * @return the number of legal moves written to the start of the buffer
+	 */
+	public int generate(GameBoard board, int[] moves) {
+		packed.read(board);
+		return generate(packed, moves);
+	}
+
+	/**
+	 * @param board
+	 * @param moves
+	 *            buffer of at least {@link MoveGenerator#MAX_MOVES} moves
+	 * @return the number of legal moves written to the start of the buffer
+	 */
+	public static int generate(PackedBoard board, int[] moves) {
+		if (moves.length < MAX_MOVES) {
+			throw new IllegalArgumentException("Move buffer must hold " + MAX_MOVES + " moves: " + moves.length);
+		}
+
+		int n = 0;
+
+		// Single cards to the foundations
+		for (int from = PackedBoard.PICKED_DECK; from < PackedBoard.STACK_COUNT; from++) {
+			int card = board.top(from);
+			if (card < 0 || PackedBoard.isFaceDown(card)) {
+				continue;
+			}
+			for (int to = PackedBoard.FOUNDATION; to < PackedBoard.STACK_COUNT; to++) {
+				if (to != from && Foundation.accepts(board.top(to), card)) {
+					moves[n++] = Move.move(from, to, 1);
+				}
+			}
+		}
+
+		// Runs from the tableaus and single cards from the other stacks to the
+		// tableaus
+		for (int from = PackedBoard.PICKED_DECK; from < PackedBoard.STACK_COUNT; from++) {
+			if (from == PackedBoard.PICKED_DECK || isFoundation(from)) {
+				if (board.size(from) > 0) {
+					n = generateToTableaus(board, from, board.top(from), 1, moves, n);
+				}
+				continue;
+			}
+
+			// Every face up run ending at the top card, from the shortest
+			int size = board.size(from);
+			int above = -1;
+			for (int i = size - 1; i >= 0; i--) {
+				int card = board.card(from, i);
+				if (PackedBoard.isFaceDown(card) || (above >= 0 && !Tableau.accepts(card, above))) {
+					break;
+				}
+				n = generateToTableaus(board, from, card, size - i, moves, n);
+				above = card;
+			}
+		}
+
+		// Turn face down top cards of the tableaus
+		for (int stack = PackedBoard.TABLEAU; stack < PackedBoard.FOUNDATION; stack++) {
+			if (board.size(stack) > 0 && PackedBoard.isFaceDown(board.top(stack))) {
+				moves[n++] = Move.flip(stack);
+			}
+		}
+
+		if (board.size(PackedBoard.DECK) > 0) {
+			moves[n++] = Move.draw();
+		} else if (board.size(PackedBoard.PICKED_DECK) > 0) {
+			moves[n++] = Move.recycle();
+		}
+
+		return n;
+	}
+
+	/**
+	 * Add a move to every other tableau accepting the card
+	 */
+	private static int generateToTableaus(PackedBoard board, int from, int card, int count, int[] moves, int n) {
+		for (int to = PackedBoard.TABLEAU; to < PackedBoard.FOUNDATION; to++) {
+			if (to != from && Tableau.accepts(board.top(to), card)) {
+				moves[n++] = Move.move(from, to, count);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @param board
+	 * @param move
+	 *            see {@link Move}
+	 * @return true if the move can be made in the position according to the rules
+	 *         of the game, true for exactly the moves generated by
+	 *         {@link MoveGenerator#generate(PackedBoard, int[])}
+	 */
+	public static boolean isLegal(PackedBoard board, int move) {
+		switch (Move.type(move)) {
+		case Move.DRAW:
+			return board.size(PackedBoard.DECK) > 0;
+		case Move.RECYCLE:
+			return board.size(PackedBoard.DECK) == 0 && board.size(PackedBoard.PICKED_DECK) > 0;
+		case Move.FLIP:
+			int stack = Move.from(move);
+			return isTableau(stack) && board.size(stack) > 0 && PackedBoard.isFaceDown(board.top(stack));
+		default:
+			return isLegalMove(board, Move.from(move), Move.to(move), Move.count(move));
+		}
+	}
+
+	private static boolean isLegalMove(PackedBoard board, int from, int to, int count) {
+		if (from == to || from < PackedBoard.PICKED_DECK || from >= PackedBoard.STACK_COUNT) {
+			return false;
+		}
+		if (count < 1 || count > board.size(from)) {
+			return false;
+		}
+
+		// Only the top card can be picked from the picked deck and the foundations
+		if (!isTableau(from) && count > 1) {
+			return false;
+		}
+
+		int first = board.size(from) - count;
+		int card = board.card(from, first);
+		if (isFoundation(to)) {
+			// Foundation stacks only accept one card at a time
+			return count == 1 && Foundation.accepts(board.top(to), card);
+		}
+		if (!isTableau(to) || !Tableau.accepts(board.top(to), card)) {
+			return false;
+		}
+
+		// The moved cards must be a run the tableau would have accepted one by one
+		for (int i = first + 1; i < first + count; i++) {
+			if (!Tableau.accepts(board.card(from, i - 1), board.card(from, i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isTableau(int stack) {
+		return stack >= PackedBoard.TABLEAU && stack < PackedBoard.FOUNDATION;
+	}
+
+	private static boolean isFoundation(int stack) {
+		return stack >= PackedBoard.FOUNDATION && stack < PackedBoard.STACK_COUNT;
+	}
+
+}
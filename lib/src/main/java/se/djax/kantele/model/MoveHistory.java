@@ -0,0 +1,113 @@
+package se.djax.kantele.model;
+
+import java.util.Arrays;
+
+/**
+ * History of the moves made in a game for undo and redo. Every move is stored
+ * as two bytes, see {@link Move}, so the history can grow without limit. Moves
+ * that have been undone are kept until a new move is added
+ *
+ */
+public final class MoveHistory {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private short[] moves = new short[INITIAL_CAPACITY];
+
+	/**
+	 * Number of moves that can be redone up to
+	 */
+	private int size;
+
+	/**
+	 * Number of moves currently applied
+	 */
+	private int position;
+
+	/**
+	 * Add a move that has been applied. Any undone moves are forgotten
+	 * 
+	 * @param move
+	 */
+	public void add(int move) {
+		if ((move & ~0xFFFF) != 0) {
+			throw new IllegalArgumentException("Move does not fit in two bytes: " + Move.toString(move));
+		}
+		if (position == moves.length) {
+			short[] grown = new short[moves.length * 2];
+			System.arraycopy(moves, 0, grown, 0, position);
+			moves = grown;
+		}
+		moves[position++] = (short) move;
+		size = position;
+	}
+
+	public boolean canUndo() {
+		return position > 0;
+	}
+
+	public boolean canRedo() {
+		return position < size;
+	}
+
+	/**
+	 * @return the last applied move, which should be reverted by the caller
+	 */
+	public int undo() {
+		if (!canUndo()) {
+			throw new IllegalStateException("Nothing to undo");
+		}
+		return moves[--position] & 0xFFFF;
+	}
+
+	/**
+	 * @return the last undone move, which should be applied again by the caller
+	 */
+	public int redo() {
+		if (!canRedo()) {
+			throw new IllegalStateException("Nothing to redo");
+		}
+		return moves[position++] & 0xFFFF;
+	}
+
+	/**
+	 * @return the number of moves currently applied
+	 */
+	public int size() {
+		return position;
+	}
+
+	/**
+	 * @param i
+	 * @return the move at index i from the start of the game
+	 */
+	public int get(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException(i);
+		}
+		return moves[i] & 0xFFFF;
+	}
+
+	/**
+	 * @return the moves currently applied, from the start of the game
+	 */
+	public short[] toArray() {
+		return Arrays.copyOf(moves, position);
+	}
+
+	/**
+	 * Forget all moves
+	 */
+	public void clear() {
+		size = 0;
+		position = 0;
+	}
+
+	/**
+	 * @return the number of bytes used to store the moves
+	 */
+	public long getMemoryBytes() {
+		return moves.length * 2L;
+	}
+
+}
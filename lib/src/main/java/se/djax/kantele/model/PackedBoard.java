@@ -0,0 +1,478 @@
+package se.djax.kantele.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import se.djax.kantele.stack.PickedStack;
+import se.djax.kantele.stack.Stack;
+
+/**
+ * A compact primitive representation of a whole game position. Every card is
+ * stored as a single byte holding the card id (see {@link Card#getId()}) in the
+ * lower 6 bits and a face down bit. The stacks are stored as packed runs after
+ * each other in one byte array, preceded by the size of every stack.
+ * <p>
+ * Copying, comparing and hashing a packed board only touches a 65 byte array,
+ * which makes it suitable for storing and searching millions of positions. It
+ * can be created from and converted back to a {@link GameBoard}.
+ *
+ */
+public final class PackedBoard {
+
+	// Index of every stack in the packed board
+	public static final int DECK = 0;
+	public static final int PICKED_DECK = 1;
+	public static final int TABLEAU = 2;
+	public static final int TABLEAU_COUNT = 7;
+	public static final int FOUNDATION = TABLEAU + TABLEAU_COUNT;
+	public static final int FOUNDATION_COUNT = 4;
+	public static final int STACK_COUNT = FOUNDATION + FOUNDATION_COUNT;
+
+	/**
+	 * Bit set on a card byte when the card is face down
+	 */
+	public static final int FACE_DOWN = 0x40;
+
+	/**
+	 * Mask for the card id of a card byte
+	 */
+	public static final int ID_MASK = 0x3f;
+
+	/**
+	 * Number of bytes in the packed form, one size per stack and one byte per card
+	 */
+	public static final int BYTES = STACK_COUNT + Card.DECK_SIZE;
+
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * The size of every stack followed by all cards in stack order, every stack
+	 * from bottom to top
+	 */
+	private final byte[] data;
+
+	/**
+	 * Create an empty packed board, usually filled later by
+	 * {@link PackedBoard#read(GameBoard)} or {@link PackedBoard#copyFrom(PackedBoard)}
+	 */
+	public PackedBoard() {
+		data = new byte[BYTES];
+	}
+
+	private PackedBoard(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * @param board
+	 *            a board with every card on one of its stacks, see
+	 *            {@link PackedBoard#read(GameBoard)}
+	 * @return a new packed board with the same position as the game board
+	 */
+	public static PackedBoard of(GameBoard board) {
+		PackedBoard packed = new PackedBoard();
+		packed.read(board);
+		return packed;
+	}
+
+	/**
+	 * Replace the content of this packed board with the start position of a new
+	 * game, the same as {@link GameBoard#GameBoard(long)} deals without creating
+	 * any cards
+	 *
+	 * @param deal
+	 *            the deal number, see {@link Deal}
+	 */
+	public void deal(long deal) {
+		deal(deal, new int[Card.DECK_SIZE]);
+	}
+
+	/**
+	 * Deal a new game like {@link PackedBoard#deal(long)}, shuffling the deck in
+	 * an array of the caller so that dealing many games does not allocate
+	 *
+	 * @param deal
+	 *            the deal number, see {@link Deal}
+	 * @param ids
+	 *            scratch array of at least {@link Card#DECK_SIZE} ids
+	 */
+	public void deal(long deal, int[] ids) {
+		Deal.shuffle(deal, ids);
+
+		// The tableaus are dealt from the bottom of the deck, the rest stays in the deck
+		int dealt = TABLEAU_COUNT * (TABLEAU_COUNT + 1) / 2;
+		Arrays.fill(data, 0, STACK_COUNT, (byte) 0);
+		data[DECK] = (byte) (Card.DECK_SIZE - dealt);
+		int offset = STACK_COUNT;
+		for (int i = dealt; i < Card.DECK_SIZE; i++) {
+			data[offset++] = (byte) (ids[i] | FACE_DOWN);
+		}
+
+		int next = 0;
+		for (int pile = 0; pile < TABLEAU_COUNT; pile++) {
+			data[TABLEAU + pile] = (byte) (pile + 1);
+			for (int card = 0; card < pile; card++) {
+				data[offset++] = (byte) (ids[next++] | FACE_DOWN);
+			}
+			data[offset++] = (byte) ids[next++];
+		}
+	}
+
+	/**
+	 * Replace the content of this packed board with the position of a game board.
+	 * Cards picked up from the board by a {@link PickedStack} are on none of its
+	 * stacks, so a board can not be read while cards are being draged
+	 *
+	 * @param board
+	 * @throws IllegalStateException
+	 *             if the stacks of the board do not hold the whole deck
+	 */
+	public void read(GameBoard board) {
+		int offset = STACK_COUNT;
+		offset = readStack(DECK, board.getDeck(), offset);
+		offset = readStack(PICKED_DECK, board.getPickedDeck(), offset);
+		for (int i = 0; i < TABLEAU_COUNT; i++) {
+			offset = readStack(TABLEAU + i, board.getTableaus()[i], offset);
+		}
+		for (int i = 0; i < FOUNDATION_COUNT; i++) {
+			offset = readStack(FOUNDATION + i, board.getFoundations()[i], offset);
+		}
+
+		if (offset != BYTES) {
+			throw new IllegalStateException("Board does not contain a full deck: " + (offset - STACK_COUNT));
+		}
+	}
+
+	private int readStack(int stack, Stack source, int offset) {
+		List<Card> cards = source.getCards();
+		data[stack] = (byte) cards.size();
+		for (int i = 0; i < cards.size(); i++) {
+			Card card = cards.get(i);
+			data[offset++] = (byte) pack(card);
+		}
+		return offset;
+	}
+
+	/**
+	 * @return a new game board with new cards in the same position as this packed
+	 *         board
+	 */
+	public GameBoard toGameBoard() {
+		List<Card> deck = Card.createStandardDeck(false);
+
+		List<List<Card>> stacks = new ArrayList<List<Card>>();
+		for (int stack = 0; stack < STACK_COUNT; stack++) {
+			List<Card> cards = new ArrayList<Card>();
+			for (int i = 0; i < size(stack); i++) {
+				int value = card(stack, i);
+				Card card = deck.get(value & ID_MASK);
+				card.setFaceDown((value & FACE_DOWN) != 0);
+				cards.add(card);
+			}
+			stacks.add(cards);
+		}
+
+		return new GameBoard(stacks.get(DECK), stacks.get(PICKED_DECK), stacks.subList(TABLEAU, TABLEAU + TABLEAU_COUNT), stacks.subList(FOUNDATION, FOUNDATION + FOUNDATION_COUNT));
+	}
+
+	/**
+	 * @return a copy of this packed board
+	 */
+	public PackedBoard copy() {
+		return new PackedBoard(data.clone());
+	}
+
+	/**
+	 * Replace the content of this packed board with the content of another
+	 *
+	 * @param other
+	 */
+	public void copyFrom(PackedBoard other) {
+		System.arraycopy(other.data, 0, data, 0, BYTES);
+	}
+
+	/**
+	 * @param stack
+	 *            index of the stack
+	 * @return the number of cards in the stack
+	 */
+	public int size(int stack) {
+		return data[stack];
+	}
+
+	/**
+	 * @param stack
+	 *            index of the stack
+	 * @param index
+	 *            index of the card in the stack where 0 is the bottom card
+	 * @return the card byte with id and face down bit
+	 */
+	public int card(int stack, int index) {
+		return data[offset(stack) + index];
+	}
+
+	/**
+	 * @param stack
+	 *            index of the stack
+	 * @return the card byte of the top card or -1 if the stack is empty
+	 */
+	public int top(int stack) {
+		int size = data[stack];
+		return size == 0 ? -1 : data[offset(stack) + size - 1];
+	}
+
+	/**
+	 * Set or clear the face down bit of a card
+	 *
+	 * @param stack
+	 * @param index
+	 * @param faceDown
+	 */
+	public void setFaceDown(int stack, int index, boolean faceDown) {
+		int i = offset(stack) + index;
+		data[i] = (byte) (faceDown ? data[i] | FACE_DOWN : data[i] & ID_MASK);
+	}
+
+	/**
+	 * Move the top cards of one stack to the top of another keeping their order.
+	 * Warning: Rules are not taken into account
+	 *
+	 * @param from
+	 *            index of the source stack
+	 * @param to
+	 *            index of the target stack
+	 * @param count
+	 *            number of cards to move
+	 */
+	public void move(int from, int to, int count) {
+		int start = offset(from) + data[from] - count;
+		int end = start + count;
+
+		if (from < to) {
+			// Cards move to the right, shift everything in between to the left
+			rotate(start, end, offset(to) + data[to]);
+		} else {
+			// Cards move to the left, shift everything in between to the right
+			rotate(offset(to) + data[to], start, end);
+		}
+
+		data[from] -= count;
+		data[to] += count;
+	}
+
+	/**
+	 * Reverse the order of the cards in a stack and set all of them face down or
+	 * face up
+	 *
+	 * @param stack
+	 * @param faceDown
+	 */
+	public void reverse(int stack, boolean faceDown) {
+		int start = offset(stack);
+		int end = start + data[stack];
+		reverse(start, end);
+		for (int i = start; i < end; i++) {
+			data[i] = (byte) (faceDown ? data[i] | FACE_DOWN : data[i] & ID_MASK);
+		}
+	}
+
+	/**
+	 * @param stack
+	 * @return index in the data array of the bottom card in the stack
+	 */
+	private int offset(int stack) {
+		int offset = STACK_COUNT;
+		for (int i = 0; i < stack; i++) {
+			offset += data[i];
+		}
+		return offset;
+	}
+
+	/**
+	 * Swap the two adjacent ranges [start, middle) and [middle, end) without any
+	 * temporary storage
+	 */
+	private void rotate(int start, int middle, int end) {
+		reverse(start, middle);
+		reverse(middle, end);
+		reverse(start, end);
+	}
+
+	private void reverse(int start, int end) {
+		for (int i = start, j = end - 1; i < j; i++, j--) {
+			byte tmp = data[i];
+			data[i] = data[j];
+			data[j] = tmp;
+		}
+	}
+
+	/**
+	 * Apply a move, see {@link Move}. Warning: Rules are not taken into account
+	 *
+	 * @param move
+	 */
+	public void apply(int move) {
+		switch (Move.type(move)) {
+		case Move.DRAW:
+			move(DECK, PICKED_DECK, 1);
+			setFaceDown(PICKED_DECK, data[PICKED_DECK] - 1, false);
+			break;
+		case Move.RECYCLE:
+			move(PICKED_DECK, DECK, data[PICKED_DECK]);
+			reverse(DECK, true);
+			break;
+		case Move.MOVE:
+			move(Move.from(move), Move.to(move), Move.count(move));
+			break;
+		case Move.FLIP:
+			setFaceDown(Move.from(move), data[Move.from(move)] - 1, false);
+			break;
+		}
+	}
+
+	/**
+	 * Revert a move previously applied with {@link PackedBoard#apply(int)}
+	 *
+	 * @param move
+	 */
+	public void undo(int move) {
+		switch (Move.type(move)) {
+		case Move.DRAW:
+			setFaceDown(PICKED_DECK, data[PICKED_DECK] - 1, true);
+			move(PICKED_DECK, DECK, 1);
+			break;
+		case Move.RECYCLE:
+			reverse(DECK, false);
+			move(DECK, PICKED_DECK, data[DECK]);
+			break;
+		case Move.MOVE:
+			move(Move.to(move), Move.from(move), Move.count(move));
+			break;
+		case Move.FLIP:
+			setFaceDown(Move.from(move), data[Move.from(move)] - 1, true);
+			break;
+		}
+	}
+
+	/**
+	 * @return true if every card is in the foundation stacks
+	 */
+	public boolean isWon() {
+		int cards = 0;
+		for (int i = 0; i < FOUNDATION_COUNT; i++) {
+			cards += data[FOUNDATION + i];
+		}
+		return cards == Card.DECK_SIZE;
+	}
+
+	/**
+	 * Write the packed board as {@link PackedBoard#BYTES} bytes
+	 *
+	 * @param buffer
+	 */
+	public void write(ByteBuffer buffer) {
+		buffer.put(data);
+	}
+
+	/**
+	 * Replace the content of this packed board with {@link PackedBoard#BYTES}
+	 * bytes previously written by {@link PackedBoard#write(ByteBuffer)}
+	 *
+	 * @param buffer
+	 */
+	public void read(ByteBuffer buffer) {
+		buffer.get(data);
+	}
+
+	/**
+	 * @return a 64 bit hash of the raw data, read 8 bytes at a time
+	 */
+	public long hash64() {
+		long hash = 0x9E3779B97F4A7C15L;
+		int i = 0;
+		for (; i + Long.BYTES <= BYTES; i += Long.BYTES) {
+			hash = mix(hash ^ (long) LONGS.get(data, i));
+		}
+		for (; i < BYTES; i++) {
+			hash = mix(hash ^ data[i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Finalizer from the SplitMix64 generator
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = hash64();
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PackedBoard)) {
+			return false;
+		}
+		return Arrays.equals(data, ((PackedBoard) obj).data);
+	}
+
+	/**
+	 * @param card
+	 * @return the card byte of a card
+	 */
+	public static int pack(Card card) {
+		return card.getId() | (card.isFaceDown() ? FACE_DOWN : 0);
+	}
+
+	/**
+	 * @param card
+	 *            a card byte
+	 * @return true if the face down bit is set
+	 */
+	public static boolean isFaceDown(int card) {
+		return (card & FACE_DOWN) != 0;
+	}
+
+	/**
+	 * @param card
+	 *            a card byte
+	 * @return the suit ordinal of the card
+	 */
+	public static int suit(int card) {
+		return (card & ID_MASK) / Card.RANK_COUNT;
+	}
+
+	/**
+	 * @param card
+	 *            a card byte
+	 * @return the rank value of the card between 1 and 13
+	 */
+	public static int rank(int card) {
+		return (card & ID_MASK) % Card.RANK_COUNT + 1;
+	}
+
+	/**
+	 * @param card
+	 *            a card byte
+	 * @return true if the card is red
+	 */
+	public static boolean isRed(int card) {
+		// Diamonds and hearts have even ordinals
+		return (suit(card) & 1) == 0;
+	}
+
+}
@@ -0,0 +1,164 @@
+package se.djax.kantele.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A recorded game, the number of the deal and every move made. Stored in a
+ * compact binary format:
+ *
+ * <pre>
+ * int   magic "KRPL"
+ * short version
+ * long  deal number, see {@link Deal}
+ * int   number of moves
+ * short move, see {@link Move}, repeated for every move
+ * </pre>
+ *
+ * All values are big endian, a game of a few hundred moves takes less than a
+ * kilobyte.
+ *
+ */
+public final class Replay {
+
+	/**
+	 * File extension of saved replays
+	 */
+	public static final String EXTENSION = ".krpl";
+
+	private static final int MAGIC = 'K' << 24 | 'R' << 16 | 'P' << 8 | 'L';
+	private static final short VERSION = 1;
+
+	/**
+	 * More moves than any game is played with, a larger count in a file is taken
+	 * to be corrupt instead of allocated
+	 */
+	private static final int MAX_MOVES = 1 << 20;
+
+	private final long deal;
+	private final short[] moves;
+
+	/**
+	 * @param deal
+	 *            the deal number, see {@link Deal}
+	 * @param moves
+	 *            the moves from the start of the game, not copied
+	 */
+	public Replay(long deal, short[] moves) {
+		this.deal = deal;
+		this.moves = moves;
+	}
+
+	/**
+	 * @param deal
+	 *            the deal number, see {@link Deal}
+	 * @param history
+	 *            the moves currently applied are copied
+	 */
+	public Replay(long deal, MoveHistory history) {
+		this(deal, history.toArray());
+	}
+
+	public long getDeal() {
+		return deal;
+	}
+
+	/**
+	 * @return the number of moves
+	 */
+	public int size() {
+		return moves.length;
+	}
+
+	/**
+	 * @param i
+	 * @return the move at index i from the start of the game
+	 */
+	public int getMove(int i) {
+		return moves[i] & 0xFFFF;
+	}
+
+	/**
+	 * @return a new game board with the start position of the game
+	 */
+	public GameBoard createBoard() {
+		return new GameBoard(deal);
+	}
+
+	/**
+	 * @param out
+	 *            the stream is not closed
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeLong(deal);
+		data.writeInt(moves.length);
+		for (short move : moves) {
+			data.writeShort(move);
+		}
+		data.flush();
+	}
+
+	/**
+	 * @param in
+	 *            the stream is not closed
+	 * @return the replay read from the stream
+	 * @throws IOException
+	 *             if the stream does not contain a replay
+	 */
+	public static Replay read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a replay");
+		}
+		short version = data.readShort();
+		if (version != VERSION) {
+			throw new IOException("Unsupported replay version: " + version);
+		}
+
+		long deal = data.readLong();
+		int count = data.readInt();
+		if (count < 0 || count > MAX_MOVES) {
+			throw new IOException("Invalid number of moves: " + count);
+		}
+		short[] moves = new short[count];
+		for (int i = 0; i < count; i++) {
+			moves[i] = data.readShort();
+		}
+		return new Replay(deal, moves);
+	}
+
+	/**
+	 * Write the replay to a file, replacing it if it exists
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return the replay read from the file
+	 * @throws IOException
+	 */
+	public static Replay load(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return read(in);
+		}
+	}
+
+}
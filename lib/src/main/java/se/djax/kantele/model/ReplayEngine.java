@@ -0,0 +1,75 @@
+package se.djax.kantele.model;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Replays recorded games on a {@link PackedBoard} without any input handling,
+ * rendering or card objects. Every move is checked with
+ * {@link MoveGenerator#isLegal(PackedBoard, int)} before it is applied, so
+ * archived games can be validated in bulk after the rules have changed.
+ * <p>
+ * An engine reuses its board for every replay and is not thread safe, use one
+ * engine per thread.
+ *
+ */
+public final class ReplayEngine {
+
+	private final PackedBoard board = new PackedBoard();
+
+	/**
+	 * Replay a game from the start position, stopping at the first move the rules
+	 * do not allow
+	 *
+	 * @param replay
+	 * @return the number of moves applied, equal to the size of the replay if
+	 *         every move was legal
+	 */
+	public int replay(Replay replay) {
+		board.deal(replay.getDeal());
+		for (int i = 0; i < replay.size(); i++) {
+			int move = replay.getMove(i);
+			if (!MoveGenerator.isLegal(board, move)) {
+				return i;
+			}
+			board.apply(move);
+		}
+		return replay.size();
+	}
+
+	/**
+	 * @return the position after the last replay
+	 */
+	public PackedBoard getBoard() {
+		return board;
+	}
+
+	/**
+	 * Validate replay files from the command line
+	 *
+	 * @param args
+	 *            the replay files
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: ReplayEngine <replay file>...");
+			System.exit(1);
+		}
+
+		ReplayEngine engine = new ReplayEngine();
+		int invalid = 0;
+		for (String file : args) {
+			Replay replay = Replay.load(Paths.get(file));
+			int applied = engine.replay(replay);
+			if (applied < replay.size()) {
+				invalid++;
+				System.out.println(file + ": illegal move " + applied + " " + Move.toString(replay.getMove(applied)));
+			} else {
+				System.out.println(file + ": " + applied + " moves" + (engine.getBoard().isWon() ? ", won" : ""));
+			}
+		}
+		System.exit(invalid == 0 ? 0 : 2);
+	}
+
+}
@@ -0,0 +1,93 @@
+package se.djax.kantele.model;
+
+/**
+ * Random keys used to hash a position. A card in a stack contributes the key
+ * for the card in that stack and the key for the card lying directly below it
+ * (or no card). Together these describe the order of every stack, and since
+ * only the card above changes its key when a card is removed, every change to a
+ * stack can be applied to the hash in constant time per moved card. A face down
+ * card also contributes a face down key.
+ * <p>
+ * The keys are generated from a fixed seed so hashes are stable between runs.
+ *
+ */
+public final class Zobrist {
+
+	private static final long SEED = 0x4B616E74656C65L;
+
+	private static final long[] STACK_KEYS = new long[Card.DECK_SIZE * PackedBoard.STACK_COUNT];
+	private static final long[] BELOW_KEYS = new long[Card.DECK_SIZE * (Card.DECK_SIZE + 1)];
+	private static final long[] FACE_DOWN_KEYS = new long[Card.DECK_SIZE];
+
+	static {
+		long state = SEED;
+		for (int i = 0; i < STACK_KEYS.length; i++) {
+			STACK_KEYS[i] = splitMix(state += 0x9E3779B97F4A7C15L);
+		}
+		for (int i = 0; i < BELOW_KEYS.length; i++) {
+			BELOW_KEYS[i] = splitMix(state += 0x9E3779B97F4A7C15L);
+		}
+		for (int i = 0; i < FACE_DOWN_KEYS.length; i++) {
+			FACE_DOWN_KEYS[i] = splitMix(state += 0x9E3779B97F4A7C15L);
+		}
+	}
+
+	private Zobrist() {
+	}
+
+	/**
+	 * @param id
+	 *            id of the card
+	 * @param stack
+	 *            index of the stack, see {@link PackedBoard}
+	 * @param below
+	 *            id of the card directly below or -1 if the card is at the bottom
+	 * @return the key of a card at a place in a stack
+	 */
+	public static long card(int id, int stack, int below) {
+		return STACK_KEYS[id * PackedBoard.STACK_COUNT + stack] ^ below(id, below);
+	}
+
+	private static long below(int id, int below) {
+		return BELOW_KEYS[id * (Card.DECK_SIZE + 1) + below + 1];
+	}
+
+	/**
+	 * @param id
+	 * @return the key of a face down card
+	 */
+	public static long faceDown(int id) {
+		return FACE_DOWN_KEYS[id];
+	}
+
+	/**
+	 * @param board
+	 * @return the hash of a whole position, computed from scratch
+	 */
+	public static long hash(PackedBoard board) {
+		long hash = 0;
+		for (int stack = 0; stack < PackedBoard.STACK_COUNT; stack++) {
+			int below = -1;
+			for (int i = 0; i < board.size(stack); i++) {
+				int card = board.card(stack, i);
+				int id = card & PackedBoard.ID_MASK;
+				hash ^= card(id, stack, below);
+				if (PackedBoard.isFaceDown(card)) {
+					hash ^= faceDown(id);
+				}
+				below = id;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Finalizer from the SplitMix64 generator, also used by {@link Deal}
+	 */
+	static long splitMix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,187 @@
+package se.djax.kantele.renderer;
+
+import java.util.List;
+
+import se.djax.kantele.model.Card;
+import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.model.Move;
+import se.djax.kantele.model.PackedBoard;
+import se.djax.kantele.solver.HintService;
+import se.djax.kantele.stack.Stack;
+
+/**
+ * Everything a {@link Renderer} draws of a game at one moment, copied from the
+ * board so that it can be drawn on another thread while the game goes on. The
+ * copy is made into arrays that are reused, so capturing a snapshot allocates
+ * nothing. Snapshots are passed from the thread updating the game to the one
+ * rendering it by a {@link SnapshotBuffer}, and are not changed while they are
+ * read
+ *
+ */
+public final class BoardSnapshot {
+
+	/**
+	 * How far outside the highlighted cards the outline of a hint is drawn
+	 */
+	private static final float HINT_MARGIN = 3;
+
+	// The stacks in board order as x, y, width, height, and the range of their
+	// cards in the card arrays
+	final float[] stackRects = new float[PackedBoard.STACK_COUNT * 4];
+	final int[] stackFirstCard = new int[PackedBoard.STACK_COUNT];
+	final int[] stackCardCount = new int[PackedBoard.STACK_COUNT];
+	int stackCount;
+
+	// The deck as x, y, width, height
+	final float[] deckRect = new float[4];
+
+	// Every drawn card in draw order, first the cards of the stacks and then the
+	// draged cards
+	final int[] cardIds = new int[Card.DECK_SIZE];
+	final float[] cardX = new float[Card.DECK_SIZE];
+	final float[] cardY = new float[Card.DECK_SIZE];
+	final boolean[] cardFaceDown = new boolean[Card.DECK_SIZE];
+	final int[] cardOrder = new int[Card.DECK_SIZE];
+	int cardCount;
+
+	// The draged cards, their bounds as x, y, width, height and how far they were
+	// from there after the previous update
+	final float[] dragedRect = new float[4];
+	int dragedFirstCard;
+	int dragedCount;
+	float dragedOffsetX;
+	float dragedOffsetY;
+
+	/**
+	 * The outlines of the source and target of the hint as x, y, width and height
+	 */
+	final float[] hintRects = new float[8];
+	int hintRectCount;
+
+	boolean won;
+
+	/**
+	 * When the snapshot was captured in {@link System#nanoTime()} time
+	 */
+	private long time;
+
+	/**
+	 * Copy the state of a game. Only to be called by the thread changing the board
+	 *
+	 * @param board
+	 * @param dragedCards
+	 *            may be null
+	 * @param dragedOffsetX
+	 *            how far the draged cards have moved since the previous update
+	 *            along x, subtracted when interpolating between the updates
+	 * @param dragedOffsetY
+	 * @param hint
+	 *            the suggested move or {@link HintService#NO_HINT}
+	 */
+	public void capture(GameBoard board, Stack dragedCards, float dragedOffsetX, float dragedOffsetY, int hint) {
+		time = System.nanoTime();
+		won = board.isWon();
+		cardCount = 0;
+
+		List<Stack> stacks = board.getStacks();
+		stackCount = stacks.size();
+		for (int i = 0; i < stackCount; i++) {
+			Stack stack = stacks.get(i);
+			setRect(stackRects, i, stack);
+			stackFirstCard[i] = cardCount;
+			stackCardCount[i] = stack.size();
+			addCards(stack, i);
+		}
+		setRect(deckRect, 0, board.getDeck());
+
+		// The draged cards are drawn on top of everything else
+		dragedFirstCard = cardCount;
+		dragedCount = 0;
+		if (dragedCards != null) {
+			setRect(dragedRect, 0, dragedCards);
+			dragedCount = dragedCards.size();
+			addCards(dragedCards, stackCount);
+		}
+		this.dragedOffsetX = dragedOffsetX;
+		this.dragedOffsetY = dragedOffsetY;
+
+		captureHint(board, hint);
+	}
+
+	private void addCards(Stack stack, int stackOrder) {
+		for (int i = 0; i < stack.size(); i++) {
+			Card card = stack.getCard(i);
+			int c = cardCount++;
+			cardIds[c] = card.getId();
+			cardX[c] = card.getX();
+			cardY[c] = card.getY();
+			cardFaceDown[c] = card.isFaceDown();
+			// Cards that can overlap are drawn later the higher this is
+			cardOrder[c] = stackOrder * Card.DECK_SIZE + i;
+		}
+	}
+
+	private static void setRect(float[] rects, int index, Stack stack) {
+		int i = index * 4;
+		rects[i] = stack.getX();
+		rects[i + 1] = stack.getY();
+		rects[i + 2] = stack.getWidth();
+		rects[i + 3] = stack.getHeight();
+	}
+
+	/**
+	 * Find the outlines of the cards or stacks the hint moves from and to
+	 *
+	 * @param board
+	 * @param hint
+	 */
+	private void captureHint(GameBoard board, int hint) {
+		hintRectCount = 0;
+		if (hint == HintService.NO_HINT) {
+			return;
+		}
+
+		Stack from = board.getStack(Move.from(hint));
+		switch (Move.type(hint)) {
+		case Move.DRAW:
+		case Move.RECYCLE:
+			Stack deck = board.getDeck();
+			addHintRect(deck.getX(), deck.getY(), deck.getWidth(), deck.getHeight());
+			break;
+		case Move.FLIP:
+			Card top = from.getTop();
+			addHintRect(top.getX(), top.getY(), top.getWidth(), top.getHeight());
+			break;
+		default:
+			// The moved cards, the lowest on screen is the top card of the stack
+			Card first = from.getCard(from.size() - Move.count(hint));
+			Card last = from.getTop();
+			addHintRect(first.getX(), last.getY(), first.getWidth(), first.getY() + first.getHeight() - last.getY());
+
+			Stack to = board.getStack(Move.to(hint));
+			if (to.isEmpty()) {
+				addHintRect(to.getX(), to.getY(), to.getWidth(), to.getHeight());
+			} else {
+				Card target = to.getTop();
+				addHintRect(target.getX(), target.getY(), target.getWidth(), target.getHeight());
+			}
+			break;
+		}
+	}
+
+	private void addHintRect(float x, float y, float width, float height) {
+		int i = hintRectCount++ * 4;
+		hintRects[i] = x - HINT_MARGIN;
+		hintRects[i + 1] = y - HINT_MARGIN;
+		hintRects[i + 2] = width + HINT_MARGIN * 2;
+		hintRects[i + 3] = height + HINT_MARGIN * 2;
+	}
+
+	/**
+	 * @return when the snapshot was captured in {@link System#nanoTime()} time
+	 */
+	public long getTime() {
+		return time;
+	}
+
+}
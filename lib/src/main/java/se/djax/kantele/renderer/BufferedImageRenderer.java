@@ -0,0 +1,235 @@
+package se.djax.kantele.renderer;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A renderer drawing to an image in memory at the internal target resolution
+ * using Java2D. Images are drawn from copies scaled in advance, see
+ * {@link TextureCache}. Subclasses decide what to do with the finished image
+ *
+ */
+public abstract class BufferedImageRenderer extends Renderer<BufferedImage> {
+
+	protected final BufferedImage buffer;
+	protected final Graphics graphics;
+	private final Color backgroundColor;
+	private final TextureCache textures;
+	private final PixelCache pixelCache;
+
+	// The clip in pixels with the origin in the top left corner. Graphics.setClip
+	// allocates, so the clip is applied to every drawing operation here instead
+	private int clipX1;
+	private int clipY1;
+	private int clipX2 = RENDER_WIDTH;
+	private int clipY2 = RENDER_HEIGHT;
+
+	public BufferedImageRenderer() {
+		// The background is opaque so the buffer needs no alpha channel
+		this.buffer = new BufferedImage(RENDER_WIDTH, RENDER_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		this.graphics = buffer.getGraphics();
+		this.backgroundColor = new Color(0, 150, 0);
+		this.textures = new TextureCache();
+		this.pixelCache = new PixelCache();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#drawImage(java.lang.Object, float, float,
+	 * float, float)
+	 */
+	@Override
+	protected void drawImage(BufferedImage image, float x, float y, float width, float height) {
+		y = transformY(y, height);
+		textures.get(image, (int) width, (int) height).draw(graphics, (int) x, (int) y, clipX1, clipY1, clipX2, clipY2);
+	}
+
+	/**
+	 * Remove all scaled images, for example when the drawing surface has changed.
+	 * New ones are created when needed
+	 * 
+	 * @param configuration
+	 *            the configuration of the drawing surface or null if there is no
+	 *            display
+	 */
+	protected void clearTextures(GraphicsConfiguration configuration) {
+		textures.clear(configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#loadImage(java.lang.String)
+	 */
+	@Override
+	protected BufferedImage loadImage(String path) {
+		File file = new File(path);
+		try {
+			BufferedImage image = readCached(file);
+			if (image != null) {
+				return image;
+			}
+
+			image = ImageIO.read(file);
+			if (image == null) {
+				throw new IOException("Unsupported image format");
+			}
+			writeCached(file, image);
+			return image;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not load image:" + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return the decoded image from the pixel cache or null if it is not there
+	 */
+	private BufferedImage readCached(File file) {
+		try {
+			return pixelCache.read(file);
+		} catch (IOException e) {
+			// The image is decoded instead
+			return null;
+		}
+	}
+
+	private void writeCached(File file, BufferedImage image) {
+		try {
+			pixelCache.write(file, image);
+		} catch (IOException e) {
+			// The image is decoded again next time
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#setClip(float, float, float, float)
+	 */
+	@Override
+	protected void setClip(float x, float y, float width, float height) {
+		clipX1 = Math.max(0, (int) x);
+		clipY1 = Math.max(0, (int) transformY(y, height));
+		clipX2 = Math.min(buffer.getWidth(), (int) x + (int) width);
+		clipY2 = Math.min(buffer.getHeight(), (int) transformY(y, height) + (int) height);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#clearScreen()
+	 */
+	@Override
+	protected void clearScreen() {
+		graphics.setColor(backgroundColor);
+		fillClipped(clipX1, clipY1, clipX2, clipY2);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#beginDrawImages()
+	 */
+	@Override
+	protected void beginDrawImages() {
+		// Nothing needs to be done here with this renderer
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#drawRect(float, float, float, float)
+	 */
+	@Override
+	protected void drawRect(float x, float y, float width, float height) {
+		y = transformY(y, height);
+		int x1 = (int) x;
+		int y1 = (int) y;
+		// Like Graphics.drawRect the outline covers width + 1 by height + 1 pixels
+		int x2 = x1 + (int) width + 1;
+		int y2 = y1 + (int) height + 1;
+		if (x2 <= x1 || y2 <= y1) {
+			return;
+		}
+		fillClipped(x1, y1, x2, y1 + 1);
+		fillClipped(x1, y2 - 1, x2, y2);
+		fillClipped(x1, y1 + 1, x1 + 1, y2 - 1);
+		fillClipped(x2 - 1, y1 + 1, x2, y2 - 1);
+	}
+
+	/**
+	 * Fill the part of a rectangle inside the clip with the current color
+	 * 
+	 * @param x1
+	 *            left edge in pixels
+	 * @param y1
+	 *            top edge in pixels
+	 * @param x2
+	 *            right edge in pixels, exclusive
+	 * @param y2
+	 *            bottom edge in pixels, exclusive
+	 */
+	private void fillClipped(int x1, int y1, int x2, int y2) {
+		x1 = Math.max(x1, clipX1);
+		y1 = Math.max(y1, clipY1);
+		x2 = Math.min(x2, clipX2);
+		y2 = Math.min(y2, clipY2);
+		if (x1 < x2 && y1 < y2) {
+			graphics.fillRect(x1, y1, x2 - x1, y2 - y1);
+		}
+	}
+
+	/**
+	 * The origin in Swing is in the top left corner. This method transforms a
+	 * Y-coordinate so that the origin is in the bottom left corner
+	 * 
+	 * @param y
+	 * @param height
+	 * @return
+	 */
+	protected float transformY(float y, float height) {
+		return buffer.getHeight() - y - height;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#endDrawImages()
+	 */
+	@Override
+	protected void endDrawImages() {
+		// Nothing needs to be done here with this renderer
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#beginDrawShapes()
+	 */
+	@Override
+	protected void beginDrawShapes() {
+		graphics.setColor(Color.BLACK);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#endDrawShapes()
+	 */
+	@Override
+	protected void endDrawShapes() {
+		// Nothing needs to be done here with this renderer
+
+	}
+
+}
@@ -0,0 +1,303 @@
+package se.djax.kantele.renderer;
+
+import se.djax.kantele.model.Card;
+
+/**
+ * Keeps track of what was drawn in the last frame to find the regions of the
+ * screen that have changed and need to be redrawn. A card is damaged when its
+ * position, face or draw order changes, and a shape when it appears or
+ * disappears. The damaged rectangles are merged into at most
+ * {@link DamageTracker#MAX_REGIONS} regions. All coordinates are in world space
+ * with the origin in the bottom left corner
+ *
+ */
+public final class DamageTracker {
+
+	/**
+	 * Maximum number of separate regions, further damage is merged into the
+	 * region it grows the least
+	 */
+	public static final int MAX_REGIONS = 8;
+
+	/**
+	 * Maximum number of shapes tracked per frame, more makes the whole screen
+	 * damaged
+	 */
+	private static final int MAX_SHAPES = 16;
+
+	/**
+	 * Margin added around every damaged rectangle to cover rounding of drawn
+	 * coordinates and the outline of rectangles
+	 */
+	private static final int MARGIN = 2;
+
+	/**
+	 * If this part of the screen is damaged the whole screen is redrawn instead
+	 */
+	private static final float FULL_AREA = 0.5f;
+
+	// Position, face and draw order of every card by id in the last frame. The
+	// draw order is -1 for a card that was not drawn
+	private final float[] cardX = new float[Card.DECK_SIZE];
+	private final float[] cardY = new float[Card.DECK_SIZE];
+	private final boolean[] cardFaceDown = new boolean[Card.DECK_SIZE];
+	private final int[] cardOrder = new int[Card.DECK_SIZE];
+	private final boolean[] cardDrawn = new boolean[Card.DECK_SIZE];
+
+	// Rectangles of the shapes in the last and the current frame as x, y, width,
+	// height
+	private float[] shapes = new float[MAX_SHAPES * 4];
+	private float[] nextShapes = new float[MAX_SHAPES * 4];
+	private int shapeCount;
+	private int nextShapeCount;
+
+	private boolean won;
+	private boolean full;
+	private volatile boolean invalidated = true;
+
+	// Damaged regions of the current frame as left, bottom, right, top
+	private final int[] regions = new int[MAX_REGIONS * 4];
+	private int regionCount;
+
+	DamageTracker() {
+		for (int i = 0; i < Card.DECK_SIZE; i++) {
+			cardOrder[i] = -1;
+		}
+	}
+
+	/**
+	 * Make the whole screen damaged in the next frame, for example when the
+	 * drawing surface has been resized or erased. Can be called from any thread
+	 */
+	public void invalidateAll() {
+		invalidated = true;
+	}
+
+	/**
+	 * Start tracking a new frame
+	 * 
+	 * @param won
+	 *            if the win screen is shown
+	 */
+	void begin(boolean won) {
+		full = invalidated || won != this.won;
+		invalidated = false;
+		this.won = won;
+		regionCount = 0;
+		nextShapeCount = 0;
+		for (int i = 0; i < Card.DECK_SIZE; i++) {
+			cardDrawn[i] = false;
+		}
+	}
+
+	/**
+	 * Register a card drawn in this frame
+	 * 
+	 * @param id
+	 * @param x
+	 * @param y
+	 * @param faceDown
+	 * @param order
+	 *            a number that is higher for cards drawn later if they can overlap
+	 */
+	void card(int id, float x, float y, boolean faceDown, int order) {
+		cardDrawn[id] = true;
+		if (cardOrder[id] == order && cardX[id] == x && cardY[id] == y && cardFaceDown[id] == faceDown) {
+			return;
+		}
+
+		if (cardOrder[id] >= 0) {
+			add(cardX[id], cardY[id], Card.WIDTH, Card.HEIGHT);
+		}
+		add(x, y, Card.WIDTH, Card.HEIGHT);
+
+		cardOrder[id] = order;
+		cardX[id] = x;
+		cardY[id] = y;
+		cardFaceDown[id] = faceDown;
+	}
+
+	/**
+	 * Register a shape drawn in this frame that does not move unless the board
+	 * changes, like the outline of an empty stack
+	 * 
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 */
+	void shape(float x, float y, float width, float height) {
+		if (nextShapeCount == MAX_SHAPES) {
+			full = true;
+			return;
+		}
+		int i = nextShapeCount++ * 4;
+		nextShapes[i] = x;
+		nextShapes[i + 1] = y;
+		nextShapes[i + 2] = width;
+		nextShapes[i + 3] = height;
+	}
+
+	/**
+	 * Finish tracking the frame, after this the damaged regions are known
+	 */
+	void end() {
+		// Cards that are no longer drawn
+		for (int id = 0; id < Card.DECK_SIZE; id++) {
+			if (!cardDrawn[id] && cardOrder[id] >= 0) {
+				add(cardX[id], cardY[id], Card.WIDTH, Card.HEIGHT);
+				cardOrder[id] = -1;
+			}
+		}
+
+		// Shapes that have appeared or disappeared
+		damageMissing(shapes, shapeCount, nextShapes, nextShapeCount);
+		damageMissing(nextShapes, nextShapeCount, shapes, shapeCount);
+
+		float[] tmp = shapes;
+		shapes = nextShapes;
+		nextShapes = tmp;
+		shapeCount = nextShapeCount;
+
+		if (full) {
+			regionCount = 1;
+			regions[0] = 0;
+			regions[1] = 0;
+			regions[2] = Renderer.RENDER_WIDTH;
+			regions[3] = Renderer.RENDER_HEIGHT;
+		}
+	}
+
+	/**
+	 * Damage every shape in a that is not in b
+	 */
+	private void damageMissing(float[] a, int aCount, float[] b, int bCount) {
+		for (int i = 0; i < aCount * 4; i += 4) {
+			boolean found = false;
+			for (int j = 0; j < bCount * 4 && !found; j += 4) {
+				found = a[i] == b[j] && a[i + 1] == b[j + 1] && a[i + 2] == b[j + 2] && a[i + 3] == b[j + 3];
+			}
+			if (!found) {
+				add(a[i], a[i + 1], a[i + 2], a[i + 3]);
+			}
+		}
+	}
+
+	/**
+	 * Add a damaged rectangle, merging it with every region it overlaps
+	 */
+	private void add(float x, float y, float width, float height) {
+		if (full) {
+			return;
+		}
+
+		int left = Math.max(0, (int) Math.floor(x) - MARGIN);
+		int bottom = Math.max(0, (int) Math.floor(y) - MARGIN);
+		int right = Math.min(Renderer.RENDER_WIDTH, (int) Math.ceil(x + width) + MARGIN);
+		int top = Math.min(Renderer.RENDER_HEIGHT, (int) Math.ceil(y + height) + MARGIN);
+		if (left >= right || bottom >= top) {
+			return;
+		}
+
+		for (;;) {
+			int merge = -1;
+			for (int i = 0; i < regionCount * 4 && merge < 0; i += 4) {
+				if (left <= regions[i + 2] && right >= regions[i] && bottom <= regions[i + 3] && top >= regions[i + 1]) {
+					merge = i;
+				}
+			}
+			if (merge < 0 && regionCount == MAX_REGIONS) {
+				merge = cheapestMerge(left, bottom, right, top);
+			}
+			if (merge < 0) {
+				break;
+			}
+
+			left = Math.min(left, regions[merge]);
+			bottom = Math.min(bottom, regions[merge + 1]);
+			right = Math.max(right, regions[merge + 2]);
+			top = Math.max(top, regions[merge + 3]);
+
+			// Remove the region by moving the last one into its place
+			regionCount--;
+			System.arraycopy(regions, regionCount * 4, regions, merge, 4);
+		}
+
+		int i = regionCount++ * 4;
+		regions[i] = left;
+		regions[i + 1] = bottom;
+		regions[i + 2] = right;
+		regions[i + 3] = top;
+
+		long area = 0;
+		for (int j = 0; j < regionCount * 4; j += 4) {
+			area += (long) (regions[j + 2] - regions[j]) * (regions[j + 3] - regions[j + 1]);
+		}
+		if (area > FULL_AREA * Renderer.RENDER_WIDTH * Renderer.RENDER_HEIGHT) {
+			full = true;
+		}
+	}
+
+	/**
+	 * @return the index of the region that grows the least when the rectangle is
+	 *         merged into it
+	 */
+	private int cheapestMerge(int left, int bottom, int right, int top) {
+		int best = 0;
+		long bestGrowth = Long.MAX_VALUE;
+		for (int i = 0; i < regionCount * 4; i += 4) {
+			long before = (long) (regions[i + 2] - regions[i]) * (regions[i + 3] - regions[i + 1]);
+			long after = (long) (Math.max(right, regions[i + 2]) - Math.min(left, regions[i])) * (Math.max(top, regions[i + 3]) - Math.min(bottom, regions[i + 1]));
+			if (after - before < bestGrowth) {
+				bestGrowth = after - before;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return true if the whole screen is damaged in this frame
+	 */
+	public boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * @return the number of damaged regions in this frame, 0 if nothing has
+	 *         changed
+	 */
+	public int getRegionCount() {
+		return regionCount;
+	}
+
+	public int getRegionX(int region) {
+		return regions[region * 4];
+	}
+
+	public int getRegionY(int region) {
+		return regions[region * 4 + 1];
+	}
+
+	public int getRegionWidth(int region) {
+		return regions[region * 4 + 2] - regions[region * 4];
+	}
+
+	public int getRegionHeight(int region) {
+		return regions[region * 4 + 3] - regions[region * 4 + 1];
+	}
+
+	/**
+	 * @param region
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 * @return true if the rectangle overlaps the region
+	 */
+	public boolean intersects(int region, float x, float y, float width, float height) {
+		int i = region * 4;
+		return x < regions[i + 2] && x + width > regions[i] && y < regions[i + 3] && y + height > regions[i + 1];
+	}
+
+}
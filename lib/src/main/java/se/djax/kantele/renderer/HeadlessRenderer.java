@@ -0,0 +1,107 @@
+package se.djax.kantele.renderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A renderer that needs no display or window. Every frame is rasterized to an
+ * image in memory which can be read or saved afterwards, and the number of draw
+ * calls is counted. Frames where nothing has changed are not redrawn. Works
+ * with java.awt.headless=true, which makes it usable on servers, in continuous
+ * integration and in benchmarks
+ *
+ */
+public class HeadlessRenderer extends BufferedImageRenderer {
+
+	// Statistics of the last rendered frame
+	private int imageCount;
+	private int rectCount;
+
+	// Counters of the frame currently being rendered
+	private int currentImageCount;
+	private int currentRectCount;
+
+	private long frameCount;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.renderer.BufferedImageRenderer#drawImage(java.awt.image.
+	 * BufferedImage, float, float, float, float)
+	 */
+	@Override
+	protected void drawImage(BufferedImage image, float x, float y, float width, float height) {
+		super.drawImage(image, x, y, width, height);
+		currentImageCount++;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.renderer.BufferedImageRenderer#drawRect(float, float,
+	 * float, float)
+	 */
+	@Override
+	protected void drawRect(float x, float y, float width, float height) {
+		super.drawRect(x, y, width, height);
+		currentRectCount++;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see se.djax.kantele.Renderer#present(se.djax.kantele.renderer.DamageTracker)
+	 */
+	@Override
+	protected void present(DamageTracker damage) {
+		// The frame is complete, there is nothing to present it to
+		imageCount = currentImageCount;
+		rectCount = currentRectCount;
+		currentImageCount = 0;
+		currentRectCount = 0;
+		frameCount++;
+	}
+
+	/**
+	 * @return the image holding the last rendered frame at the internal target
+	 *         resolution. It is reused and overwritten by the next frame
+	 */
+	public BufferedImage getImage() {
+		return buffer;
+	}
+
+	/**
+	 * Save the last rendered frame as a PNG file
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeImage(File file) throws IOException {
+		ImageIO.write(buffer, "png", file);
+	}
+
+	/**
+	 * @return the number of images drawn in the last redrawn frame
+	 */
+	public int getImageCount() {
+		return imageCount;
+	}
+
+	/**
+	 * @return the number of rectangles drawn in the last redrawn frame
+	 */
+	public int getRectCount() {
+		return rectCount;
+	}
+
+	/**
+	 * @return the number of frames where anything had changed and was redrawn
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+}
@@ -0,0 +1,136 @@
+package se.djax.kantele.renderer;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decoded images stored as raw pixels, so that later starts can memory map
+ * them instead of decoding the image files again. Every cache file starts with
+ * a header of {@link PixelCache#HEADER_BYTES} bytes holding the size of the
+ * image and the length and modification time of the source file, and is
+ * recreated when the source file changes. The pixels follow as ARGB ints
+ * <p>
+ * The directory is set with the system property kantele.pixelcache and
+ * defaults to a directory in the temporary directory of the system
+ *
+ */
+final class PixelCache {
+
+	/**
+	 * The characters KPXL
+	 */
+	private static final int MAGIC = 0x4B50584C;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+
+	private final Path directory;
+
+	PixelCache() {
+		this(Paths.get(System.getProperty("kantele.pixelcache", Paths.get(System.getProperty("java.io.tmpdir"), "kantele-pixels").toString())));
+	}
+
+	PixelCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @param source
+	 *            the image file
+	 * @return the cached image or null if it is not cached or the source file has
+	 *         changed
+	 * @throws IOException
+	 */
+	BufferedImage read(File source) throws IOException {
+		Path file = cacheFile(source);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				return null;
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+				return null;
+			}
+			int width = map.getInt();
+			int height = map.getInt();
+			long length = map.getLong();
+			long modified = map.getLong();
+			if (length != source.length() || modified != source.lastModified() || channel.size() != HEADER_BYTES + 4L * width * height) {
+				return null;
+			}
+
+			int[] pixels = new int[width * height];
+			map.asIntBuffer().get(pixels);
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			image.getRaster().setDataElements(0, 0, width, height, pixels);
+			return image;
+		}
+	}
+
+	/**
+	 * Store a decoded image in the cache
+	 * 
+	 * @param source
+	 *            the image file the image was decoded from
+	 * @param image
+	 * @throws IOException
+	 */
+	void write(File source, BufferedImage image) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		BufferedImage argb = image;
+		if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+			argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = argb.createGraphics();
+			g.drawImage(image, 0, 0, null);
+			g.dispose();
+		}
+		int[] pixels = (int[]) argb.getRaster().getDataElements(0, 0, width, height, null);
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4 * pixels.length);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putLong(source.length()).putLong(source.lastModified());
+		buffer.asIntBuffer().put(pixels);
+		// The int view does not move the position, which is still after the header
+		buffer.rewind();
+
+		// Write to a temporary file first so that no one reads a half written file
+		Files.createDirectories(directory);
+		Path file = cacheFile(source);
+		Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private Path cacheFile(File source) {
+		String name = source.getAbsolutePath().replaceAll("[^A-Za-z0-9.-]", "_");
+		return directory.resolve(name + ".raw");
+	}
+
+}
@@ -1,16 +1,20 @@
 package se.djax.kantele.renderer;
 
-import java.util.List;
-
-import se.djax.kantele.Kantele;
+import se.djax.kantele.metrics.Metrics;
+import se.djax.kantele.metrics.PhaseEvent;
 import se.djax.kantele.model.Card;
-import se.djax.kantele.model.Card.Rank;
-import se.djax.kantele.model.Card.Suit;
-import se.djax.kantele.stack.Stack;
 
 /**
  * A generic implementation of the renderer used to draw the game to the screen
- * 
+ * <p>
+ * The renderer draws a {@link BoardSnapshot} of the game and never reads the
+ * board itself, so it can run on a thread of its own while the game is updated.
+ * Only one thread may render with a renderer at a time.
+ * <p>
+ * Only the parts of the screen that have changed since the last frame are
+ * redrawn and presented, see {@link DamageTracker}. Every damaged region is
+ * cleared and redrawn with the drawing clipped to it, skipping everything
+ * outside of it
  *
  * @param <T>
  *            The type used for image data
@@ -21,77 +25,260 @@ public abstract class Renderer<T> {
 	public static final int RENDER_WIDTH = 1280;
 	public static final int RENDER_HEIGHT = 720;
 
-	// Card textures
-	private T[][] cardTextures;
-	private T cardBackTexture;
-	private T restartTexture;
-	private T winTexture;
+	/**
+	 * Null until the textures are first needed, so that they are not loaded by a
+	 * renderer that is still being constructed
+	 */
+	private volatile Textures<T> textures;
+
+	/**
+	 * Number of loaded textures in the last frame, everything is redrawn when
+	 * more have been loaded
+	 */
+	private int loadedTextures;
+
+	private final DamageTracker damage;
+
+	// How far the draged cards are drawn from their position in the snapshot in
+	// this frame
+	private float dragedShiftX;
+	private float dragedShiftY;
 
+	/**
+	 * Create a renderer loading its own textures in the background with
+	 * {@link Renderer#loadImage(String)}. The loading starts when the textures
+	 * are first needed, at the latest when the first frame is rendered. Until a
+	 * texture is loaded a placeholder is drawn instead
+	 */
 	public Renderer() {
-		loadImages();
+		damage = new DamageTracker();
 	}
 
-	@SuppressWarnings("unchecked")
-	private final void loadImages() {
-		// Unsafe cast but according to Effective Java; Item 26 the best way to create
-		// an array of a generic type
-		cardTextures = (T[][]) new Object[Suit.values().length][Rank.values().length];
-
-		// Load all images from the disk according to the following naming format:
-		// nyy.png where:
-		// n = the suit (1=diamond,2=spades,3=hearts,4=Clubs
-		// yy = the rank (01-13)
-		for (int x = 0; x < cardTextures.length; x++) {
-			for (int y = 0; y < cardTextures[x].length; y++) {
-				cardTextures[x][y] = loadImage("cards/" + (((x + 1) * 100) + y + 1) + ".png");
+	/**
+	 * Create a renderer using textures already loaded or being loaded by another
+	 * renderer
+	 * 
+	 * @param textures
+	 */
+	public Renderer(Textures<T> textures) {
+		this.damage = new DamageTracker();
+		this.textures = textures;
+	}
+
+	/**
+	 * @return the textures of this renderer, which can be shared with other
+	 *         renderers of the same type. Starts loading them if they are not
+	 *         loading yet
+	 */
+	public Textures<T> getTextures() {
+		Textures<T> loading = textures;
+		if (loading == null) {
+			synchronized (this) {
+				loading = textures;
+				if (loading == null) {
+					// The renderer is fully constructed once it is used, so the loader
+					// threads can call loadImage
+					loading = Textures.load(this::loadImage);
+					textures = loading;
+				}
 			}
 		}
+		return loading;
+	}
 
-		// Misc textures
-		cardBackTexture = loadImage("cards/back7.png");
-		restartTexture = loadImage("restart.png");
-		winTexture = loadImage("win.png");
+	/**
+	 * Wait until all textures are loaded
+	 */
+	public void awaitTextures() {
+		getTextures().await();
 	}
 
 	/**
 	 * Main render method called every frame
 	 * 
-	 * @param kantele
+	 * @param snapshot
+	 *            the game to draw, not changed while it is drawn
+	 * @param alpha
+	 *            how far between the update before the snapshot (0) and the
+	 *            snapshot (1) the draged cards are drawn
+	 */
+	public final void render(BoardSnapshot snapshot, float alpha) {
+		long start = System.nanoTime();
+		PhaseEvent renderEvent = PhaseEvent.start(PhaseEvent.RENDER);
+		Textures<T> textures = getTextures();
+		if (textures.getLoadedCount() != loadedTextures) {
+			// Replace the placeholders
+			loadedTextures = textures.getLoadedCount();
+			damage.invalidateAll();
+		}
+
+		dragedShiftX = snapshot.dragedOffsetX * (1 - alpha);
+		dragedShiftY = snapshot.dragedOffsetY * (1 - alpha);
+
+		trackDamage(snapshot);
+		if (damage.getRegionCount() == 0) {
+			// Nothing has changed since the last frame
+			PhaseEvent.finish(renderEvent);
+			Metrics.RENDER.recordSince(start);
+			return;
+		}
+
+		for (int region = 0; region < damage.getRegionCount(); region++) {
+			setClip(damage.getRegionX(region), damage.getRegionY(region), damage.getRegionWidth(region), damage.getRegionHeight(region));
+			renderRegion(snapshot, region);
+		}
+
+		long presentStart = System.nanoTime();
+		PhaseEvent presentEvent = PhaseEvent.start(PhaseEvent.PRESENT);
+		present(damage);
+		PhaseEvent.finish(presentEvent);
+		PhaseEvent.finish(renderEvent);
+		long end = System.nanoTime();
+		Metrics.PRESENT.record(end - presentStart);
+		Metrics.RENDER.record(end - start);
+	}
+
+	/**
+	 * Make the whole screen be redrawn in the next frame. Can be called from any
+	 * thread
+	 */
+	public void invalidateAll() {
+		damage.invalidateAll();
+	}
+
+	/**
+	 * Register everything that will be drawn in this frame to find what has
+	 * changed
+	 * 
+	 * @param snapshot
+	 */
+	private final void trackDamage(BoardSnapshot snapshot) {
+		damage.begin(snapshot.won);
+
+		float[] stackRects = snapshot.stackRects;
+		for (int i = 0; i < snapshot.stackCount; i++) {
+			if (snapshot.stackCardCount[i] == 0) {
+				int r = i * 4;
+				damage.shape(stackRects[r], stackRects[r + 1], stackRects[r + 2], stackRects[r + 3]);
+			}
+		}
+
+		float[] deck = snapshot.deckRect;
+		damage.shape(deck[0], deck[1], deck[2], deck[3]);
+
+		for (int c = 0; c < snapshot.cardCount; c++) {
+			damage.card(snapshot.cardIds[c], getCardX(snapshot, c), getCardY(snapshot, c), snapshot.cardFaceDown[c], snapshot.cardOrder[c]);
+		}
+
+		float[] hintRects = snapshot.hintRects;
+		for (int i = 0; i < snapshot.hintRectCount * 4; i += 4) {
+			damage.shape(hintRects[i], hintRects[i + 1], hintRects[i + 2] + 1, hintRects[i + 3] + 1);
+		}
+
+		damage.end();
+	}
+
+	/**
+	 * @param snapshot
+	 * @param card
+	 *            index of the card in the snapshot
+	 * @return the x coordinate the card is drawn at in this frame
+	 */
+	private final float getCardX(BoardSnapshot snapshot, int card) {
+		return card < snapshot.dragedFirstCard ? snapshot.cardX[card] : snapshot.cardX[card] + dragedShiftX;
+	}
+
+	/**
+	 * @param snapshot
+	 * @param card
+	 *            index of the card in the snapshot
+	 * @return the y coordinate the card is drawn at in this frame
+	 */
+	private final float getCardY(BoardSnapshot snapshot, int card) {
+		return card < snapshot.dragedFirstCard ? snapshot.cardY[card] : snapshot.cardY[card] + dragedShiftY;
+	}
+
+	/**
+	 * Redraw everything inside a damaged region
+	 * 
+	 * @param snapshot
+	 * @param region
 	 */
-	public final void render(Kantele kantele) {
+	private final void renderRegion(BoardSnapshot snapshot, int region) {
 		clearScreen();
 
 		beginDrawShapes();
-		renderStackGrids(kantele.getBoard().getStacks());
+		renderStackGrids(snapshot, region);
 		endDrawShapes();
 
 		beginDrawImages();
-		renderRestartDeck(kantele.getBoard().getDeck());
+		renderRestartDeck(snapshot.deckRect, region);
 
-		for (Stack stack : kantele.getBoard().getStacks()) {
-			renderCards(stack);
+		float[] stackRects = snapshot.stackRects;
+		for (int i = 0; i < snapshot.stackCount; i++) {
+			int r = i * 4;
+			if (damage.intersects(region, stackRects[r], stackRects[r + 1], stackRects[r + 2], stackRects[r + 3])) {
+				renderCards(snapshot, snapshot.stackFirstCard[i], snapshot.stackCardCount[i], region);
+			}
 		}
 
-		if (kantele.getDragedCards() != null) {
-			renderCards(kantele.getDragedCards());
+		float[] draged = snapshot.dragedRect;
+		if (snapshot.dragedCount > 0 && damage.intersects(region, draged[0] + dragedShiftX, draged[1] + dragedShiftY, draged[2], draged[3])) {
+			renderCards(snapshot, snapshot.dragedFirstCard, snapshot.dragedCount, region);
 		}
 
-		if (kantele.getBoard().isWon()) {
-			drawImage(winTexture, RENDER_WIDTH / 4, RENDER_HEIGHT / 4, RENDER_WIDTH / 2, RENDER_HEIGHT / 2);
+		if (snapshot.won) {
+			T winTexture = textures.get(Textures.WIN);
+			if (winTexture != null) {
+				drawImage(winTexture, RENDER_WIDTH / 4, RENDER_HEIGHT / 4, RENDER_WIDTH / 2, RENDER_HEIGHT / 2);
+			}
 		}
 
 		endDrawImages();
+
+		if (snapshot.hintRectCount > 0) {
+			beginDrawShapes();
+			renderHint(snapshot, region);
+			endDrawShapes();
+		}
+	}
+
+	/**
+	 * Outline the source and target of the hint on top of the cards
+	 * 
+	 * @param snapshot
+	 * @param region
+	 */
+	private final void renderHint(BoardSnapshot snapshot, int region) {
+		float[] hintRects = snapshot.hintRects;
+		for (int i = 0; i < snapshot.hintRectCount * 4; i += 4) {
+			float x = hintRects[i];
+			float y = hintRects[i + 1];
+			float width = hintRects[i + 2];
+			float height = hintRects[i + 3];
+			if (damage.intersects(region, x, y, width + 1, height + 1)) {
+				drawRect(x, y, width, height);
+				drawRect(x + 1, y + 1, width - 2, height - 2);
+			}
+		}
 	}
 
 	/**
 	 * Render the rectangle below all empty stacks
 	 * 
-	 * @param stacks
+	 * @param snapshot
+	 * @param region
 	 */
-	private final void renderStackGrids(List<Stack> stacks) {
-		for (Stack stack : stacks) {
-			if (stack.isEmpty()) {
-				drawRect(stack.getX(), stack.getY(), stack.getWidth(), stack.getHeight());
+	private final void renderStackGrids(BoardSnapshot snapshot, int region) {
+		float[] stackRects = snapshot.stackRects;
+		for (int i = 0; i < snapshot.stackCount; i++) {
+			int r = i * 4;
+			float x = stackRects[r];
+			float y = stackRects[r + 1];
+			float width = stackRects[r + 2];
+			float height = stackRects[r + 3];
+			if (snapshot.stackCardCount[i] == 0 && damage.intersects(region, x, y, width + 1, height + 1)) {
+				drawRect(x, y, width, height);
 			}
 		}
 	}
@@ -99,41 +286,62 @@ public abstract class Renderer<T> {
 	/**
 	 * Draw the reload symbol below the deck
 	 * 
-	 * @param stack
+	 * @param deck
+	 *            the deck as x, y, width, height
+	 * @param region
 	 */
-	private final void renderRestartDeck(Stack stack) {
-		drawImage(restartTexture, stack.getX() + stack.getWidth() / 4, stack.getY() + stack.getHeight() / 4, stack.getWidth() / 2, stack.getHeight() / 2);
+	private final void renderRestartDeck(float[] deck, int region) {
+		T restartTexture = textures.get(Textures.RESTART);
+		if (restartTexture != null && damage.intersects(region, deck[0], deck[1], deck[2], deck[3])) {
+			drawImage(restartTexture, deck[0] + deck[2] / 4, deck[1] + deck[3] / 4, deck[2] / 2, deck[3] / 2);
+		}
 	}
 
 	/**
 	 * 
-	 * Helper method for drawing a whole stack of cards
+	 * Helper method for drawing a range of the cards of a snapshot inside a
+	 * region
 	 * 
-	 * @param stack
+	 * @param snapshot
+	 * @param first
+	 *            index of the first card in the snapshot
+	 * @param count
+	 * @param region
 	 */
-	private final void renderCards(Stack stack) {
-		for (Card card : stack.getCards()) {
-			renderCard(card);
+	private final void renderCards(BoardSnapshot snapshot, int first, int count, int region) {
+		for (int c = first; c < first + count; c++) {
+			float x = getCardX(snapshot, c);
+			float y = getCardY(snapshot, c);
+			if (damage.intersects(region, x, y, Card.WIDTH, Card.HEIGHT)) {
+				renderCard(snapshot.cardIds[c], snapshot.cardFaceDown[c], x, y);
+			}
 		}
 	}
 
 	/**
 	 * Draw a card to the screen with the correct image
 	 * 
-	 * @param card
+	 * @param id
+	 * @param faceDown
+	 * @param x
+	 * @param y
 	 */
-	private final void renderCard(Card card) {
+	private final void renderCard(int id, boolean faceDown, float x, float y) {
 		T image = null;
 
 		// Get the right texture
-		if (card.isFaceDown()) {
-			image = cardBackTexture;
+		if (faceDown) {
+			image = textures.get(Textures.BACK);
 		} else {
-			image = cardTextures[card.getSuit().ordinal()][card.getRank().getValue() - 1];
+			image = textures.get(id);
 		}
 
-		// Draw to screen
-		drawImage(image, card.getX(), card.getY(), card.getWidth(), card.getHeight());
+		// Draw to screen, or the outline of the card if the texture is not loaded yet
+		if (image != null) {
+			drawImage(image, x, y, Card.WIDTH, Card.HEIGHT);
+		} else {
+			drawRect(x, y, Card.WIDTH, Card.HEIGHT);
+		}
 	}
 
 	/**
@@ -167,7 +375,26 @@ public abstract class Renderer<T> {
 	protected abstract T loadImage(String path);
 
 	/**
-	 * Replace everything on the screen to a solid color
+	 * Restrict all following drawing to a rectangle in world space
+	 * 
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 */
+	protected abstract void setClip(float x, float y, float width, float height);
+
+	/**
+	 * Called once per frame after all damaged regions have been redrawn, to show
+	 * them on the screen
+	 * 
+	 * @param damage
+	 *            the regions that have been redrawn
+	 */
+	protected abstract void present(DamageTracker damage);
+
+	/**
+	 * Replace everything inside the clip with a solid color
 	 */
 	protected abstract void clearScreen();
 
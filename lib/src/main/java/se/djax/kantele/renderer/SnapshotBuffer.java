@@ -0,0 +1,68 @@
+package se.djax.kantele.renderer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes {@link BoardSnapshot}s from the thread updating a game to the thread
+ * rendering it without locking or allocating. Three snapshots are exchanged:
+ * the writer fills one, the reader draws another and the third is the latest
+ * published one, waiting to be taken by the reader. Neither thread ever waits
+ * for the other, the writer simply replaces a snapshot the reader has not taken
+ * yet, and the reader keeps drawing the one it has until a newer one is
+ * published.
+ *
+ */
+public final class SnapshotBuffer {
+
+	/**
+	 * Set in {@link SnapshotBuffer#ready} when the snapshot there has not been
+	 * taken by the reader
+	 */
+	private static final int FRESH = 4;
+	private static final int INDEX = 3;
+
+	private final BoardSnapshot[] snapshots = { new BoardSnapshot(), new BoardSnapshot(), new BoardSnapshot() };
+
+	/**
+	 * Index of the latest published snapshot, and {@link SnapshotBuffer#FRESH}
+	 * if it is newer than the one of the reader
+	 */
+	private final AtomicInteger ready = new AtomicInteger(1);
+
+	// Only used by the writing thread
+	private int back = 0;
+
+	// Only used by the reading thread
+	private int front = 2;
+
+	/**
+	 * @return the snapshot to capture the game into before it is published, only
+	 *         to be called by the writing thread
+	 */
+	public BoardSnapshot getWriteSnapshot() {
+		return snapshots[back];
+	}
+
+	/**
+	 * Make the snapshot returned by {@link SnapshotBuffer#getWriteSnapshot()} the
+	 * latest one, only to be called by the writing thread
+	 */
+	public void publish() {
+		back = ready.getAndSet(back | FRESH) & INDEX;
+	}
+
+	/**
+	 * Take the latest published snapshot, only to be called by the reading
+	 * thread. The snapshot is not changed until the next call
+	 *
+	 * @return the latest published snapshot, the same as the last time if none
+	 *         has been published since
+	 */
+	public BoardSnapshot acquire() {
+		if ((ready.get() & FRESH) != 0) {
+			front = ready.getAndSet(front) & INDEX;
+		}
+		return snapshots[front];
+	}
+
+}
@@ -1,79 +1,98 @@
 package se.djax.kantele.renderer;
 
-import java.awt.Color;
-import java.awt.Component;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
 import java.awt.Graphics;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
+import java.awt.image.BufferStrategy;
 
-import javax.imageio.ImageIO;
-import javax.swing.JOptionPane;
-
-import se.djax.kantele.Vector2;
 import se.djax.kantele.input.InputGenerator;
+import se.djax.kantele.input.InputQueue;
 
 /**
- * An implementation of a renderer using Swing
+ * An implementation of a renderer using AWT/Swing. The frames are presented
+ * actively through a {@link BufferStrategy} of a canvas, so rendering can be
+ * done from any thread, while the input events arrive on the event dispatch
+ * thread and are passed on to the game through an {@link InputQueue}
  *
  */
-public class SwingRenderer extends Renderer<BufferedImage> implements InputGenerator {
+public class SwingRenderer extends BufferedImageRenderer implements InputGenerator {
 
-	private final BufferedImage buffer;
-	private final Graphics graphics;
-	private boolean isTouched;
-	private final Vector2 pointer;
-	private final Component gamePanel;
-	private final Color backgroundColor;
+	/**
+	 * Events that can wait for the game. The mouse sends a few hundred events a
+	 * second at most, so the queue is only full if the game has stalled
+	 */
+	private static final int INPUT_CAPACITY = 1024;
+
+	private final InputQueue input = new InputQueue(INPUT_CAPACITY);
 
 	/**
-	 * @param gamePanel
-	 *            the component which will be drawn on
+	 * Set when the canvas has been resized, handled on the render thread
 	 */
-	public SwingRenderer(final Component gamePanel) {
-		this.buffer = new BufferedImage(RENDER_WIDTH, RENDER_HEIGHT, BufferedImage.TYPE_INT_ARGB);
-		this.gamePanel = gamePanel;
-		this.graphics = buffer.getGraphics();
-		this.pointer = new Vector2();
-		this.backgroundColor = new Color(0, 150, 0);
+	private volatile boolean resized;
 
-		gamePanel.addMouseMotionListener(new MouseAdapter() {
+	private final Canvas canvas;
+
+	/**
+	 * @param canvas
+	 *            the canvas which will be drawn on
+	 */
+	public SwingRenderer(final Canvas canvas) {
+		this.canvas = canvas;
+		clearTextures(canvas.getGraphicsConfiguration());
+
+		canvas.addMouseMotionListener(new MouseAdapter() {
 
 			@Override
 			public void mouseMoved(MouseEvent e) {
-				updatePointerLocation(e);
+				offer(InputQueue.MOVE, e);
 			}
 
 			@Override
 			public void mouseDragged(MouseEvent e) {
-				updatePointerLocation(e);
+				offer(InputQueue.MOVE, e);
+			}
+		});
+
+		canvas.addComponentListener(new ComponentAdapter() {
+
+			@Override
+			public void componentResized(ComponentEvent e) {
+				resized = true;
+				invalidateAll();
 			}
 		});
 
-		gamePanel.addMouseListener(new MouseAdapter() {
+		canvas.addMouseListener(new MouseAdapter() {
 
 			@Override
 			public void mousePressed(MouseEvent e) {
-				isTouched = true;
+				offer(InputQueue.PRESS, e);
 			}
 
 			@Override
 			public void mouseReleased(MouseEvent e) {
-				isTouched = false;
+				offer(InputQueue.RELEASE, e);
 			}
 
 		});
 	}
 
 	/**
-	 * Update the location of the pointer in world space
+	 * Pass an event on to the game with the pointer location in world space. If
+	 * the game has stalled and the queue is full the event is dropped
 	 * 
+	 * @param type
+	 *            see {@link InputQueue}
 	 * @param e
 	 */
-	private void updatePointerLocation(MouseEvent e) {
-		pointer.set(e.getX() * getScreenToWorldFactorX(), transformY(e.getY() * getScreenToWorldFactorY(), 0));
+	private void offer(int type, MouseEvent e) {
+		float x = e.getX() * getScreenToWorldFactorX();
+		float y = transformY(e.getY() * getScreenToWorldFactorY(), 0);
+		input.offer(type, x, y, System.nanoTime());
 	}
 
 	/**
@@ -81,7 +100,7 @@ public class SwingRenderer extends Renderer<BufferedImage> implements InputGener
 	 *         surface
 	 */
 	private float getScreenToWorldFactorX() {
-		return (buffer.getWidth() + 0f) / gamePanel.getWidth();
+		return (buffer.getWidth() + 0f) / canvas.getWidth();
 	}
 
 	/**
@@ -89,132 +108,84 @@ public class SwingRenderer extends Renderer<BufferedImage> implements InputGener
 	 *         surface
 	 */
 	private float getScreenToWorldFactorY() {
-		return (buffer.getHeight() + 0f) / gamePanel.getHeight();
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see se.djax.kantele.Renderer#getPointerInWorldCoordinates()
-	 */
-	@Override
-	public Vector2 getPointerInWorldCoordinates() {
-		return pointer;
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see se.djax.kantele.Renderer#isTouched()
-	 */
-	@Override
-	public boolean isTouched() {
-		return isTouched;
+		return (buffer.getHeight() + 0f) / canvas.getHeight();
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see se.djax.kantele.Renderer#drawImage(java.lang.Object, float, float,
-	 * float, float)
+	 * @see se.djax.kantele.input.InputGenerator#getInputQueue()
 	 */
 	@Override
-	protected void drawImage(BufferedImage image, float x, float y, float width, float height) {
-		y = transformY(y, height);
-		graphics.drawImage(image, (int) x, (int) y, (int) width, (int) height, gamePanel);
+	public InputQueue getInputQueue() {
+		return input;
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see se.djax.kantele.Renderer#loadImage(java.lang.String)
+	 * @see se.djax.kantele.Renderer#present(se.djax.kantele.renderer.DamageTracker)
 	 */
 	@Override
-	protected BufferedImage loadImage(String path) {
-		File file = new File(path);
-		try {
-			return ImageIO.read(file);
-		} catch (IOException e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(gamePanel, "Could not load image:" + file.getAbsolutePath() + "\n is your working directory correctly set?");
-			throw new RuntimeException(e);
+	protected void present(DamageTracker damage) {
+		if (!canvas.isDisplayable() || canvas.getWidth() == 0 || canvas.getHeight() == 0) {
+			return;
 		}
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see se.djax.kantele.Renderer#clearScreen()
-	 */
-	@Override
-	protected void clearScreen() {
-		graphics.setColor(backgroundColor);
-		graphics.fillRect(0, 0, buffer.getWidth(), buffer.getHeight());
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see se.djax.kantele.Renderer#beginDrawImages()
-	 */
-	@Override
-	protected void beginDrawImages() {
-		// Nothing needs to be done here with this renderer
 
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see se.djax.kantele.Renderer#endDrawImages()
-	 */
-	@Override
-	protected void endDrawImages() {
-		gamePanel.getGraphics().drawImage(buffer, 0, 0, gamePanel.getWidth(), gamePanel.getHeight(), gamePanel);
-	}
+		BufferStrategy strategy = canvas.getBufferStrategy();
+		if (strategy == null) {
+			canvas.createBufferStrategy(2);
+			strategy = canvas.getBufferStrategy();
+		}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see se.djax.kantele.Renderer#drawRect(float, float, float, float)
-	 */
-	@Override
-	protected void drawRect(float x, float y, float width, float height) {
-		y = transformY(y, height);
-		graphics.drawRect((int) x, (int) y, (int) width, (int) height);
+		// The back buffer can only be updated partially if it keeps its content
+		// between frames
+		BufferCapabilities capabilities = strategy.getCapabilities();
+		boolean full = damage.isFull() || (capabilities.isPageFlipping() && capabilities.getFlipContents() != BufferCapabilities.FlipContents.COPIED);
+
+		do {
+			do {
+				Graphics g = strategy.getDrawGraphics();
+				draw(g, damage, full);
+				g.dispose();
+
+				// If the content was lost everything has to be drawn again
+				full = true;
+			} while (strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+
+		if (resized) {
+			// The canvas may have moved to another screen, new textures are created
+			// for the next frame
+			resized = false;
+			clearTextures(canvas.getGraphicsConfiguration());
+		}
 	}
 
 	/**
-	 * The origin in Swing is in the top left corner. This method transforms a
-	 * Y-coordinate so that the origin is in the bottom left corner
-	 * 
-	 * @param y
-	 * @param height
-	 * @return
-	 */
-	private float transformY(float y, float height) {
-		return buffer.getHeight() - y - height;
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see se.djax.kantele.Renderer#beginDrawShapes()
-	 */
-	@Override
-	protected void beginDrawShapes() {
-		graphics.setColor(Color.BLACK);
-	}
-
-	/*
-	 * (non-Javadoc)
+	 * Scale the redrawn regions of the buffer to the canvas
 	 * 
-	 * @see se.djax.kantele.Renderer#endDrawShapes()
+	 * @param g
+	 * @param damage
+	 * @param full
+	 *            if the whole buffer should be drawn
 	 */
-	@Override
-	protected void endDrawShapes() {
-		// Nothing needs to be done here with this renderer
+	private void draw(Graphics g, DamageTracker damage, boolean full) {
+		if (full) {
+			g.drawImage(buffer, 0, 0, canvas.getWidth(), canvas.getHeight(), null);
+			return;
+		}
 
+		float scaleX = (canvas.getWidth() + 0f) / buffer.getWidth();
+		float scaleY = (canvas.getHeight() + 0f) / buffer.getHeight();
+		for (int i = 0; i < damage.getRegionCount(); i++) {
+			int x1 = damage.getRegionX(i);
+			int y1 = (int) transformY(damage.getRegionY(i), damage.getRegionHeight(i));
+			int x2 = x1 + damage.getRegionWidth(i);
+			int y2 = y1 + damage.getRegionHeight(i);
+			g.drawImage(buffer, (int) Math.floor(x1 * scaleX), (int) Math.floor(y1 * scaleY), (int) Math.ceil(x2 * scaleX), (int) Math.ceil(y2 * scaleY), x1, y1, x2, y2, null);
+		}
 	}
 
 }
@@ -0,0 +1,226 @@
+package se.djax.kantele.renderer;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DirectColorModel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Copies of images scaled to the size they are drawn at, so that drawing them
+ * is a plain copy instead of a scaling operation. Every image keeps one scaled
+ * copy which is replaced if the image is drawn at another size. The copies are
+ * created in a format compatible with the drawing surface when it is known.
+ * <p>
+ * Blending transparent pixels is several times slower than copying opaque
+ * ones. Images that are opaque apart from fully transparent corners, like the
+ * cards, are therefore split into opaque parts and four small transparent
+ * corners
+ *
+ */
+final class TextureCache {
+
+	/**
+	 * Format with one bit of alpha used when there is no drawing surface
+	 */
+	private static final ColorModel BITMASK = new DirectColorModel(25, 0xff0000, 0xff00, 0xff, 0x1000000);
+
+	private final Map<BufferedImage, Texture> scaled = new IdentityHashMap<BufferedImage, Texture>();
+
+	/**
+	 * The configuration of the drawing surface or null if there is none
+	 */
+	private GraphicsConfiguration configuration;
+
+	/**
+	 * An image scaled to a size, made of one or more parts
+	 */
+	static final class Texture {
+
+		private final int width;
+		private final int height;
+		private final BufferedImage[] parts;
+
+		// Position of every part in the texture as x, y
+		private final int[] offsets;
+
+		private Texture(int width, int height, BufferedImage[] parts, int[] offsets) {
+			this.width = width;
+			this.height = height;
+			this.parts = parts;
+			this.offsets = offsets;
+		}
+
+		/**
+		 * Draw the part of the texture inside a rectangle without scaling. Unlike
+		 * {@link Graphics#setClip(int, int, int, int)} this does not allocate
+		 * 
+		 * @param g
+		 * @param x
+		 *            left edge in pixels
+		 * @param y
+		 *            top edge in pixels
+		 * @param clipX1
+		 * @param clipY1
+		 * @param clipX2
+		 *            exclusive
+		 * @param clipY2
+		 *            exclusive
+		 */
+		void draw(Graphics g, int x, int y, int clipX1, int clipY1, int clipX2, int clipY2) {
+			for (int i = 0; i < parts.length; i++) {
+				BufferedImage part = parts[i];
+				int partX = x + offsets[i * 2];
+				int partY = y + offsets[i * 2 + 1];
+				int x1 = Math.max(partX, clipX1);
+				int y1 = Math.max(partY, clipY1);
+				int x2 = Math.min(partX + part.getWidth(), clipX2);
+				int y2 = Math.min(partY + part.getHeight(), clipY2);
+				if (x1 < x2 && y1 < y2) {
+					g.drawImage(part, x1, y1, x2, y2, x1 - partX, y1 - partY, x2 - partX, y2 - partY, null);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * @param image
+	 * @param width
+	 * @param height
+	 * @return a copy of the image scaled to the size
+	 */
+	Texture get(BufferedImage image, int width, int height) {
+		Texture texture = scaled.get(image);
+		if (texture == null || texture.width != width || texture.height != height) {
+			texture = createTexture(image, Math.max(1, width), Math.max(1, height));
+			scaled.put(image, texture);
+		}
+		return texture;
+	}
+
+	/**
+	 * Remove all scaled copies and create new ones compatible with another drawing
+	 * surface
+	 * 
+	 * @param configuration
+	 *            may be null if there is no display
+	 */
+	void clear(GraphicsConfiguration configuration) {
+		this.configuration = configuration;
+		scaled.clear();
+	}
+
+	private Texture createTexture(BufferedImage image, int width, int height) {
+		if (isTranslucent(image)) {
+			// Scaling is only done once so it can be done with good quality
+			BufferedImage texture = createImage(width, height, Transparency.TRANSLUCENT);
+			Graphics2D g = texture.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, width, height, null);
+			g.dispose();
+			return new Texture(width, height, new BufferedImage[] { texture }, new int[] { 0, 0 });
+		}
+
+		// Without interpolation the alpha stays fully transparent or fully opaque
+		BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = scaledImage.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, width, height, null);
+		g.dispose();
+
+		int corner = transparentCorner(scaledImage);
+		if (corner == 0) {
+			return new Texture(width, height, new BufferedImage[] { copy(scaledImage, Transparency.OPAQUE) }, new int[] { 0, 0 });
+		}
+		if (corner * 2 >= width || corner * 2 >= height) {
+			return new Texture(width, height, new BufferedImage[] { copy(scaledImage, Transparency.BITMASK) }, new int[] { 0, 0 });
+		}
+
+		BufferedImage opaque = copy(scaledImage, Transparency.OPAQUE);
+		BufferedImage bitmask = copy(scaledImage, Transparency.BITMASK);
+		int right = width - corner;
+		int bottom = height - corner;
+		int middle = height - corner * 2;
+		BufferedImage[] parts = {
+				// The middle column, then the left and right columns between the corners
+				opaque.getSubimage(corner, 0, width - corner * 2, height), opaque.getSubimage(0, corner, corner, middle), opaque.getSubimage(right, corner, corner, middle),
+				bitmask.getSubimage(0, 0, corner, corner), bitmask.getSubimage(right, 0, corner, corner), bitmask.getSubimage(0, bottom, corner, corner),
+				bitmask.getSubimage(right, bottom, corner, corner) };
+		int[] offsets = { corner, 0, 0, corner, right, corner, 0, 0, right, 0, 0, bottom, right, bottom };
+		return new Texture(width, height, parts, offsets);
+	}
+
+	/**
+	 * @param image
+	 * @return true if any pixel is partially transparent
+	 */
+	private static boolean isTranslucent(BufferedImage image) {
+		if (image.getColorModel().getTransparency() != Transparency.TRANSLUCENT) {
+			return false;
+		}
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				int alpha = image.getRGB(x, y) >>> 24;
+				if (alpha != 0 && alpha != 0xff) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param image
+	 * @return the size of the smallest squares in the corners of the image that
+	 *         contain all transparent pixels, 0 if there are none
+	 */
+	private static int transparentCorner(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int corner = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (image.getRGB(x, y) >>> 24 == 0) {
+					// Distance to the closest vertical and horizontal edge
+					int fromSide = Math.min(x + 1, width - x);
+					int fromEnd = Math.min(y + 1, height - y);
+					corner = Math.max(corner, Math.max(fromSide, fromEnd));
+				}
+			}
+		}
+		return corner;
+	}
+
+	private BufferedImage copy(BufferedImage image, int transparency) {
+		BufferedImage copy = createImage(image.getWidth(), image.getHeight(), transparency);
+		Graphics2D g = copy.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+
+	private BufferedImage createImage(int width, int height, int transparency) {
+		if (configuration != null) {
+			return configuration.createCompatibleImage(width, height, transparency);
+		}
+		switch (transparency) {
+		case Transparency.OPAQUE:
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		case Transparency.BITMASK:
+			return new BufferedImage(BITMASK, BITMASK.createCompatibleWritableRaster(width, height), false, null);
+		default:
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package se.djax.kantele.renderer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import se.djax.kantele.model.Card;
+
+/**
+ * The set of textures used by a renderer, loaded concurrently on a small pool
+ * of threads. Textures that are not loaded yet are null, so the game can be
+ * rendered with placeholders before all of them are ready. A set can be shared
+ * by several renderers with the same image type
+ *
+ * @param <T>
+ *            The type used for image data
+ */
+public final class Textures<T> {
+
+	/**
+	 * Index of every texture. The card faces use the index of the card id, see
+	 * {@link Card#getId()}
+	 */
+	public static final int BACK = Card.DECK_SIZE;
+	public static final int RESTART = BACK + 1;
+	public static final int WIN = RESTART + 1;
+	public static final int COUNT = WIN + 1;
+
+	private static final int MAX_THREADS = 4;
+
+	private final AtomicReferenceArray<T> textures = new AtomicReferenceArray<T>(COUNT);
+	private final AtomicInteger loadedCount = new AtomicInteger();
+	private final CountDownLatch done = new CountDownLatch(COUNT);
+	private volatile RuntimeException error;
+
+	private Textures() {
+	}
+
+	/**
+	 * Start loading all textures in the background
+	 * 
+	 * @param loader
+	 *            loads an image from a path relative to the working directory.
+	 *            Called from several threads at once
+	 * @return the set of textures, filled in as they are loaded
+	 */
+	public static <T> Textures<T> load(Function<String, T> loader) {
+		Textures<T> textures = new Textures<T>();
+
+		int threads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, "Kantele texture loader " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// The card back first since most cards are face down at the start
+		pool.execute(() -> textures.load(BACK, loader));
+		for (int i = 0; i < COUNT; i++) {
+			if (i != BACK) {
+				final int index = i;
+				pool.execute(() -> textures.load(index, loader));
+			}
+		}
+
+		// The threads finish when all textures are loaded
+		pool.shutdown();
+		return textures;
+	}
+
+	private void load(int index, Function<String, T> loader) {
+		try {
+			textures.set(index, loader.apply(getPath(index)));
+			loadedCount.incrementAndGet();
+		} catch (RuntimeException e) {
+			error = e;
+		} finally {
+			done.countDown();
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the path of a texture relative to the working directory
+	 */
+	public static String getPath(int index) {
+		switch (index) {
+		case BACK:
+			return "cards/back7.png";
+		case RESTART:
+			return "restart.png";
+		case WIN:
+			return "win.png";
+		default:
+			// Card faces are named nyy.png where:
+			// n = the suit (1=diamond,2=spades,3=hearts,4=Clubs
+			// yy = the rank (01-13)
+			int suit = index / Card.RANK_COUNT;
+			int rank = index % Card.RANK_COUNT;
+			return "cards/" + (((suit + 1) * 100) + rank + 1) + ".png";
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the texture or null if it is not loaded yet
+	 * @throws RuntimeException
+	 *             if loading any texture has failed
+	 */
+	public T get(int index) {
+		if (error != null) {
+			throw error;
+		}
+		return textures.get(index);
+	}
+
+	/**
+	 * @return the number of textures loaded so far
+	 */
+	public int getLoadedCount() {
+		return loadedCount.get();
+	}
+
+	/**
+	 * @return true when all textures are loaded
+	 */
+	public boolean isLoaded() {
+		return loadedCount.get() == COUNT;
+	}
+
+	/**
+	 * Wait until all textures are loaded
+	 * 
+	 * @throws RuntimeException
+	 *             if loading any texture has failed or the thread is interrupted
+	 */
+	public void await() {
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package se.djax.kantele.session;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import se.djax.kantele.Kantele;
+import se.djax.kantele.input.ScriptedInput;
+
+/**
+ * One game running in a {@link SessionHost}, played through a
+ * {@link ScriptedInput} instead of a mouse. The game is only touched by the
+ * worker updating it, so all changes from other threads are posted as tasks
+ * that run before the next update of the session
+ *
+ */
+public final class Session {
+
+	private final long id;
+	private final Kantele kantele;
+	private final ScriptedInput input;
+
+	/**
+	 * Tasks to run on the worker before the next update
+	 */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private volatile boolean closed;
+
+	Session(long id) {
+		this.id = id;
+		this.input = new ScriptedInput();
+		// Sessions are never rendered by themselves, see SessionHost#render
+		this.kantele = new Kantele(null, input);
+		// Nobody watches a decided game being finished
+		kantele.setAutoCompleteDelay(0);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Run a task before the next update of the session, e.g. to move the pointer
+	 * with {@link Session#getInput()} or to undo a move
+	 *
+	 * @param task
+	 */
+	public void post(Runnable task) {
+		tasks.add(task);
+	}
+
+	/**
+	 * @return the input of the session, only to be used from posted tasks
+	 */
+	public ScriptedInput getInput() {
+		return input;
+	}
+
+	/**
+	 * @return the game of the session, only to be used from posted tasks
+	 */
+	public Kantele getKantele() {
+		return kantele;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	void close() {
+		closed = true;
+	}
+
+	/**
+	 * Run the posted tasks and update the game one tick
+	 *
+	 * @param delta
+	 *            time of a tick in seconds
+	 */
+	synchronized void update(float delta) {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+		kantele.update(delta);
+	}
+
+}
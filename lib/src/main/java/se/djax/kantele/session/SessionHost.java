@@ -0,0 +1,302 @@
+package se.djax.kantele.session;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.djax.kantele.GameLoop;
+import se.djax.kantele.metrics.Metrics;
+import se.djax.kantele.renderer.BoardSnapshot;
+import se.djax.kantele.renderer.HeadlessRenderer;
+
+/**
+ * Runs many independent games in one JVM. A single clock thread ticks all
+ * sessions at a fixed rate, and every tick is split into batches of sessions
+ * that are updated in parallel on a fork join pool, so the number of threads
+ * does not depend on the number of sessions.
+ * <p>
+ * Sessions are not rendered while they run, which keeps the memory of a
+ * session to its board and input state. A picture of any session can be
+ * rendered on demand with one renderer shared by the whole host.
+ *
+ */
+public class SessionHost {
+
+	/**
+	 * Number of sessions updated by one task
+	 */
+	private static final int BATCH = 64;
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	private final ForkJoinPool workers;
+	private final ScheduledExecutorService clock;
+	private final long stepNanos;
+	private final float step;
+
+	/**
+	 * The running sessions, replaced on every change so a tick can use it without
+	 * locking
+	 */
+	private volatile Session[] sessions = new Session[0];
+	private long nextId;
+
+	/**
+	 * Shared by all sessions, created when the first picture is rendered
+	 */
+	private HeadlessRenderer renderer;
+
+	/**
+	 * The session being rendered, copied so that the session is not locked while
+	 * it is drawn. Guarded by the lock of the renderer
+	 */
+	private final BoardSnapshot snapshot = new BoardSnapshot();
+
+	// Metrics of the host
+	private final LongAdder updates = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private volatile long ticks;
+	private volatile long overruns;
+	private volatile long lastTickNanos;
+	private volatile long maxTickNanos;
+	private volatile float updatesPerSecond;
+	private long rateStart;
+	private long rateUpdates;
+
+	/**
+	 * A host with {@link GameLoop#DEFAULT_TICK_RATE} updates per second and one
+	 * worker per processor
+	 */
+	public SessionHost() {
+		this(Runtime.getRuntime().availableProcessors(), GameLoop.DEFAULT_TICK_RATE);
+	}
+
+	/**
+	 * @param parallelism
+	 *            number of worker threads updating sessions
+	 * @param tickRate
+	 *            number of updates of every session per second
+	 */
+	public SessionHost(int parallelism, int tickRate) {
+		if (tickRate <= 0) {
+			throw new IllegalArgumentException("Tick rate must be positive: " + tickRate);
+		}
+		this.stepNanos = NANOS_PER_SECOND / tickRate;
+		this.step = 1f / tickRate;
+		this.workers = new ForkJoinPool(parallelism);
+
+		this.clock = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "kantele-session-clock");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Start ticking the sessions
+	 */
+	public void start() {
+		rateStart = System.nanoTime();
+		clock.scheduleAtFixedRate(this::tick, 0, stepNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stop ticking and shut down the threads of the host
+	 */
+	public void close() {
+		clock.shutdownNow();
+		workers.shutdown();
+	}
+
+	/**
+	 * @return a new session with a new game, updated from the next tick
+	 */
+	public synchronized Session createSession() {
+		Session session = new Session(nextId++);
+		Session[] current = sessions;
+		Session[] grown = Arrays.copyOf(current, current.length + 1);
+		grown[current.length] = session;
+		sessions = grown;
+		return session;
+	}
+
+	/**
+	 * Stop updating a session
+	 *
+	 * @param session
+	 */
+	public synchronized void removeSession(Session session) {
+		Session[] current = sessions;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == session) {
+				Session[] shrunk = Arrays.copyOf(current, current.length - 1);
+				System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+				sessions = shrunk;
+				session.close();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Update every session one step, called by the clock thread
+	 */
+	private void tick() {
+		long start = System.nanoTime();
+		Session[] current = sessions;
+		if (current.length > 0) {
+			workers.invoke(new UpdateTask(current, 0, current.length));
+		}
+		long end = System.nanoTime();
+
+		long duration = end - start;
+		Metrics.SESSION_TICK.record(duration);
+		lastTickNanos = duration;
+		if (duration > maxTickNanos) {
+			maxTickNanos = duration;
+		}
+		if (duration > stepNanos) {
+			overruns++;
+		}
+		ticks++;
+
+		if (end - rateStart >= NANOS_PER_SECOND) {
+			long total = updates.sum();
+			updatesPerSecond = (total - rateUpdates) * (float) NANOS_PER_SECOND / (end - rateStart);
+			rateUpdates = total;
+			rateStart = end;
+		}
+	}
+
+	/**
+	 * Update the sessions in [from, to), splitting the range in half until it is
+	 * small enough
+	 */
+	private class UpdateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Session[] sessions;
+		private final int from;
+		private final int to;
+
+		UpdateTask(Session[] sessions, int from, int to) {
+			this.sessions = sessions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > BATCH) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new UpdateTask(sessions, from, middle), new UpdateTask(sessions, middle, to));
+				return;
+			}
+
+			for (int i = from; i < to; i++) {
+				Session session = sessions[i];
+				try {
+					session.update(step);
+				} catch (RuntimeException e) {
+					// A broken game must not stop the other sessions
+					e.printStackTrace();
+					failures.increment();
+					removeSession(session);
+				}
+			}
+			updates.add(to - from);
+		}
+
+	}
+
+	/**
+	 * Render a picture of a session as it is after its last update
+	 *
+	 * @param session
+	 * @return a new image at the internal target resolution
+	 */
+	public BufferedImage render(Session session) {
+		HeadlessRenderer shared;
+		synchronized (this) {
+			if (renderer == null) {
+				renderer = new HeadlessRenderer();
+			}
+			shared = renderer;
+		}
+
+		synchronized (shared) {
+			shared.awaitTextures();
+			synchronized (session) {
+				session.getKantele().snapshot(snapshot);
+			}
+			// The last frame of the renderer may show another session
+			shared.invalidateAll();
+			shared.render(snapshot, 1);
+			BufferedImage image = shared.getImage();
+			return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+		}
+	}
+
+	public int getSessionCount() {
+		return sessions.length;
+	}
+
+	/**
+	 * @return the number of ticks since the host was started
+	 */
+	public long getTickCount() {
+		return ticks;
+	}
+
+	/**
+	 * @return the total number of session updates
+	 */
+	public long getUpdateCount() {
+		return updates.sum();
+	}
+
+	/**
+	 * @return the number of session updates per second, measured over the last
+	 *         second
+	 */
+	public float getUpdatesPerSecond() {
+		return updatesPerSecond;
+	}
+
+	/**
+	 * @return the time in nanoseconds it took to update all sessions in the last
+	 *         tick
+	 */
+	public long getLastTickNanos() {
+		return lastTickNanos;
+	}
+
+	/**
+	 * @return the longest time in nanoseconds it has taken to update all sessions
+	 */
+	public long getMaxTickNanos() {
+		return maxTickNanos;
+	}
+
+	/**
+	 * @return the number of ticks that took longer than the time step, which
+	 *         delays the following ticks
+	 */
+	public long getOverrunCount() {
+		return overruns;
+	}
+
+	/**
+	 * @return the number of sessions removed because their update failed
+	 */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+}
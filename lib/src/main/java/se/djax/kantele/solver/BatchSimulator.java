@@ -0,0 +1,219 @@
+package se.djax.kantele.solver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.djax.kantele.model.Card;
+import se.djax.kantele.model.Deal;
+import se.djax.kantele.model.PackedBoard;
+import se.djax.kantele.solver.SolverResult.Status;
+
+/**
+ * Solves a range of deals in parallel on a fork join pool and streams the
+ * results to a {@link DealDatabase}. Every chunk of deals is written to its own
+ * position in the file as soon as it is solved, so the memory used does not
+ * depend on the number of deals. The deals are added to the database when all
+ * of them are solved.
+ *
+ */
+public class BatchSimulator {
+
+	/**
+	 * Number of deals solved by one task before its results are written
+	 */
+	private static final int CHUNK = 256;
+
+	private final ForkJoinPool pool;
+	private final ThreadLocal<Solver> solvers;
+
+	// Totals of the current run
+	private final LongAdder won = new LongAdder();
+	private final LongAdder lost = new LongAdder();
+	private final LongAdder unknown = new LongAdder();
+	private final LongAdder nodes = new LongAdder();
+
+	/**
+	 * @param parallelism
+	 *            number of worker threads
+	 * @param tableBits
+	 *            size of the transposition table of every worker, see
+	 *            {@link Solver#Solver(int)}
+	 * @param nodeLimit
+	 *            maximum number of nodes searched per deal
+	 * @param timeLimit
+	 *            maximum time in milliseconds per deal
+	 */
+	public BatchSimulator(int parallelism, int tableBits, long nodeLimit, long timeLimit) {
+		this.pool = new ForkJoinPool(parallelism);
+		this.solvers = ThreadLocal.withInitial(() -> {
+			Solver solver = new Solver(tableBits);
+			solver.setNodeLimit(nodeLimit);
+			solver.setTimeLimit(timeLimit);
+			return solver;
+		});
+	}
+
+	/**
+	 * Solve every deal from firstDeal to firstDeal + count - 1 and write the
+	 * results to a new database, replacing the file if it exists
+	 *
+	 * @param firstDeal
+	 *            the first deal number, see {@link Deal}
+	 * @param count
+	 * @param output
+	 * @return a summary of the run
+	 * @throws IOException
+	 */
+	public String run(long firstDeal, long count, Path output) throws IOException {
+		try (DealDatabase database = DealDatabase.create(output, firstDeal)) {
+			return run(database, count);
+		}
+	}
+
+	/**
+	 * Solve the deals following the last deal of an existing database and append
+	 * the results
+	 *
+	 * @param count
+	 *            number of deals to add
+	 * @param database
+	 * @return a summary of the run
+	 * @throws IOException
+	 */
+	public String extend(long count, Path database) throws IOException {
+		try (DealDatabase existing = DealDatabase.open(database, true)) {
+			return run(existing, count);
+		}
+	}
+
+	private String run(DealDatabase database, long count) throws IOException {
+		won.reset();
+		lost.reset();
+		unknown.reset();
+		nodes.reset();
+		long start = System.nanoTime();
+
+		long first = database.size();
+		try {
+			pool.invoke(new SolveTask(database, first, first + count));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		database.commit(first + count);
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		return String.format("%d deals in %.1f s (%.0f deals/s, %.0f nodes/s): %d won, %d lost, %d unknown", count, seconds, count / seconds, nodes.sum() / seconds, won.sum(), lost.sum(),
+				unknown.sum());
+	}
+
+	/**
+	 * Shut down the worker threads
+	 */
+	public void close() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Solve the deals with indexes [from, to) in the database, splitting the
+	 * range in half until it is small enough
+	 */
+	private class SolveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DealDatabase database;
+		private final long from;
+		private final long to;
+
+		SolveTask(DealDatabase database, long from, long to) {
+			this.database = database;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > CHUNK) {
+				long middle = (from + to) >>> 1;
+				invokeAll(new SolveTask(database, from, middle), new SolveTask(database, middle, to));
+				return;
+			}
+
+			Solver solver = solvers.get();
+			PackedBoard board = new PackedBoard();
+			int[] ids = new int[Card.DECK_SIZE];
+			ByteBuffer records = ByteBuffer.allocate((int) (to - from) * DealDatabase.RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			for (long i = from; i < to; i++) {
+				board.deal(database.getFirstDeal() + i, ids);
+				SolverResult result = solver.solve(board);
+				count(result);
+
+				DealDatabase.putRecord(records, result);
+			}
+
+			records.flip();
+			try {
+				database.write(from, records);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void count(SolverResult result) {
+			nodes.add(result.getNodes());
+			switch (result.getStatus()) {
+			case Won:
+				won.increment();
+				break;
+			case Lost:
+				lost.increment();
+				break;
+			default:
+				unknown.increment();
+				break;
+			}
+		}
+
+	}
+
+	/**
+	 * Run a batch from the command line
+	 *
+	 * @param args
+	 *            first deal number, number of deals, output file and optionally
+	 *            the number of threads and the node limit per deal. With extend
+	 *            instead of the first deal number the deals are added to an
+	 *            existing database
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: BatchSimulator <first deal|extend> <count> <output file> [threads] [node limit]");
+			System.exit(1);
+		}
+
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		long nodeLimit = args.length > 4 ? Long.parseLong(args[4]) : Solver.DEFAULT_NODE_LIMIT;
+
+		BatchSimulator simulator = new BatchSimulator(threads, Solver.tableBitsFor(nodeLimit), nodeLimit, Solver.DEFAULT_TIME_LIMIT);
+		try {
+			long count = Long.parseLong(args[1]);
+			Path output = Paths.get(args[2]);
+			if (args[0].equals("extend")) {
+				System.out.println(simulator.extend(count, output));
+			} else {
+				System.out.println(simulator.run(Long.parseLong(args[0]), count, output));
+			}
+		} finally {
+			simulator.close();
+		}
+	}
+
+}
@@ -0,0 +1,415 @@
+package se.djax.kantele.solver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import se.djax.kantele.model.Deal;
+import se.djax.kantele.solver.SolverResult.Status;
+
+/**
+ * Solver results of a consecutive range of deals, see {@link Deal}, stored in a
+ * file that is memory mapped instead of read into the heap. Looking up a deal
+ * is a single read at a position computed from the deal number, so a game can
+ * pick a deal known to be winnable without running the solver.
+ * <p>
+ * The file starts with a header of {@link DealDatabase#HEADER_BYTES} bytes
+ * (magic, version, first deal number and number of deals) followed by one
+ * record of {@link DealDatabase#RECORD_BYTES} bytes per deal in deal number
+ * order: the {@link Status} ordinal, one unused byte, the solution length as an
+ * unsigned short and the number of searched nodes as an int, both saturated.
+ * All values are little endian. The same format is written by
+ * {@link BatchSimulator}.
+ * <p>
+ * The database only grows at the end. New records are written after the last
+ * deal first and the number of deals in the header is updated last, so a
+ * reader never sees a deal that is not completely written. Appended deals are
+ * only written to the header when the database is committed or closed, see
+ * {@link DealDatabase#commit()}. The file is mapped in segments since a single
+ * mapping is limited to 2 GB, hundreds of millions of deals only take a few GB
+ * of address space. The last segment of a writable database is mapped with
+ * room to grow, doubling it when it is full, so appending rarely maps again.
+ * <p>
+ * Lookups are thread safe and can run at the same time as appending.
+ *
+ */
+public final class DealDatabase implements Closeable {
+
+	/**
+	 * The characters KNTL when written little endian
+	 */
+	public static final int MAGIC = 0x4C544E4B;
+	public static final int VERSION = 2;
+	public static final int HEADER_BYTES = 32;
+	public static final int RECORD_BYTES = 8;
+
+	/**
+	 * Position of the number of deals in the header
+	 */
+	private static final int SIZE_POSITION = 16;
+
+	/**
+	 * Number of records per mapped segment, 2^24 records is 128 MB
+	 */
+	private static final int SEGMENT_BITS = 24;
+	private static final long SEGMENT_RECORDS = 1L << SEGMENT_BITS;
+
+	/**
+	 * Number of records mapped at least for the last segment of a writable
+	 * database
+	 */
+	private static final long MIN_MAPPED_RECORDS = 1 << 12;
+
+	/**
+	 * Number of random deals tried before searching for a winnable deal in order
+	 */
+	private static final int RANDOM_ATTEMPTS = 64;
+
+	private static final Status[] STATUSES = Status.values();
+
+	private final FileChannel channel;
+	private final boolean writable;
+	private final long firstDeal;
+
+	/**
+	 * Mapped segments, replaced when the last one grows. Written before the size
+	 * so that every record below the size is mapped
+	 */
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	private volatile long size;
+
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+	private DealDatabase(FileChannel channel, boolean writable, long firstDeal, long size) throws IOException {
+		this.channel = channel;
+		this.writable = writable;
+		this.firstDeal = firstDeal;
+		map(size);
+	}
+
+	/**
+	 * Create an empty database, replacing the file if it exists
+	 *
+	 * @param path
+	 * @param firstDeal
+	 *            the deal number of the first record
+	 * @return the database open for appending
+	 * @throws IOException
+	 */
+	public static DealDatabase create(Path path, long firstDeal) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putLong(firstDeal).putLong(0);
+			header.clear();
+			writeFully(channel, header, 0);
+			return new DealDatabase(channel, true, firstDeal, 0);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param path
+	 * @param writable
+	 *            true to be able to append deals
+	 * @return the existing database
+	 * @throws IOException
+	 *             if the file is not a database
+	 */
+	public static DealDatabase open(Path path, boolean writable) throws IOException {
+		FileChannel channel = writable ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException("Not a deal database");
+				}
+			}
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException("Not a deal database");
+			}
+			int version = header.getInt(4);
+			if (version != VERSION) {
+				throw new IOException("Unsupported deal database version: " + version);
+			}
+			long firstDeal = header.getLong(8);
+			long size = header.getLong(SIZE_POSITION);
+			if (size < 0 || HEADER_BYTES + size * RECORD_BYTES > channel.size()) {
+				throw new IOException("Invalid number of deals: " + size);
+			}
+			return new DealDatabase(channel, writable, firstDeal, size);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the deal number of the first record
+	 */
+	public long getFirstDeal() {
+		return firstDeal;
+	}
+
+	/**
+	 * @return the number of deals
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @param deal
+	 * @return true if the database has a result for the deal
+	 */
+	public boolean contains(long deal) {
+		long index = deal - firstDeal;
+		return index >= 0 && index < size;
+	}
+
+	/**
+	 * @param deal
+	 * @return the result of solving the deal, {@link Status#Unknown} if the
+	 *         record is corrupt or from a later version
+	 * @throws IllegalArgumentException
+	 *             if the deal is not in the database
+	 */
+	public Status getStatus(long deal) {
+		long index = index(deal);
+		int ordinal = segment(index).get(offset(index)) & 0xFF;
+		return ordinal < STATUSES.length ? STATUSES[ordinal] : Status.Unknown;
+	}
+
+	/**
+	 * @param deal
+	 * @return the number of moves of the solution found, 0 if none was found
+	 * @throws IllegalArgumentException
+	 *             if the deal is not in the database
+	 */
+	public int getSolutionLength(long deal) {
+		long index = index(deal);
+		return segment(index).getShort(offset(index) + 2) & 0xFFFF;
+	}
+
+	/**
+	 * @param deal
+	 * @return the number of positions searched when solving the deal
+	 * @throws IllegalArgumentException
+	 *             if the deal is not in the database
+	 */
+	public long getNodes(long deal) {
+		long index = index(deal);
+		return segment(index).getInt(offset(index) + 4) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * @return true if the solver has won any deal of the database, looking
+	 *         through all of them if it has not
+	 */
+	public boolean hasWonDeal() {
+		long size = this.size;
+		for (long i = 0; i < size; i++) {
+			if (getStatus(firstDeal + i) == Status.Won) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Pick a random deal the solver has won
+	 *
+	 * @param random
+	 * @return the deal number
+	 * @throws IllegalStateException
+	 *             if there are no won deals
+	 */
+	public long randomWonDeal(Random random) {
+		long size = this.size;
+		if (size == 0) {
+			throw new IllegalStateException("No deals");
+		}
+
+		// Most deals are won, so a few random tries are almost always enough
+		long index = 0;
+		for (int i = 0; i < RANDOM_ATTEMPTS; i++) {
+			index = Math.floorMod(random.nextLong(), size);
+			if (getStatus(firstDeal + index) == Status.Won) {
+				return firstDeal + index;
+			}
+		}
+		for (long i = 1; i < size; i++) {
+			long deal = firstDeal + (index + i) % size;
+			if (getStatus(deal) == Status.Won) {
+				return deal;
+			}
+		}
+		throw new IllegalStateException("No won deals");
+	}
+
+	/**
+	 * Add the result of the deal after the last one. It can be looked up at once,
+	 * but is only stored in the file by {@link DealDatabase#commit()} or
+	 * {@link DealDatabase#close()}
+	 *
+	 * @param result
+	 *            result of solving deal {@link DealDatabase#getFirstDeal()} +
+	 *            {@link DealDatabase#size()}
+	 * @throws IOException
+	 */
+	public synchronized void append(SolverResult result) throws IOException {
+		record.clear();
+		putRecord(record, result);
+		record.flip();
+		write(size, record);
+		map(size + 1);
+	}
+
+	/**
+	 * Make all appended deals durable and add them to the number of deals in the
+	 * file
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void commit() throws IOException {
+		commit(size);
+	}
+
+	/**
+	 * Write records after the last deal without adding them to the database
+	 * until {@link DealDatabase#commit(long)}. Used to write the results of many
+	 * deals from several threads in any order
+	 *
+	 * @param index
+	 *            index of the first record, at least the size of the database
+	 * @param records
+	 *            whole records, written from the position to the limit
+	 * @throws IOException
+	 */
+	void write(long index, ByteBuffer records) throws IOException {
+		if (!writable) {
+			throw new IllegalStateException("Deal database is read only");
+		}
+		if (index < size) {
+			throw new IllegalArgumentException("Deals can only be appended: " + index);
+		}
+		writeFully(channel, records, HEADER_BYTES + index * RECORD_BYTES);
+	}
+
+	/**
+	 * Add all written records below the new size to the database
+	 *
+	 * @param newSize
+	 *            the new number of deals
+	 * @throws IOException
+	 */
+	synchronized void commit(long newSize) throws IOException {
+		if (newSize < size) {
+			throw new IllegalArgumentException("Deals can not be removed: " + newSize);
+		}
+
+		// Make the records durable before the header refers to them
+		channel.force(false);
+		ByteBuffer header = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(newSize).flip();
+		writeFully(channel, header, SIZE_POSITION);
+		map(newSize);
+	}
+
+	/**
+	 * Commit the appended deals of a writable database and close the file. The
+	 * mapped memory is released when the database is garbage collected
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (writable && channel.isOpen()) {
+				commit();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Write the record of a result
+	 */
+	static void putRecord(ByteBuffer records, SolverResult result) {
+		records.put((byte) result.getStatus().ordinal());
+		records.put((byte) 0);
+		records.putShort((short) Math.min(result.getMoves().length, 0xFFFF));
+		records.putInt((int) Math.min(result.getNodes(), Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Map the segments holding the first newSize records and publish the new size
+	 */
+	private void map(long newSize) throws IOException {
+		MappedByteBuffer[] mapped = segments;
+		int count = (int) ((newSize + SEGMENT_RECORDS - 1) >>> SEGMENT_BITS);
+		if (count > mapped.length || (count > 0 && mapped[count - 1].capacity() < records(newSize, count - 1) * RECORD_BYTES)) {
+			MappedByteBuffer[] grown = new MappedByteBuffer[Math.max(count, mapped.length)];
+			System.arraycopy(mapped, 0, grown, 0, mapped.length);
+			// Every segment except the last is full and never mapped again
+			for (int i = Math.max(mapped.length - 1, 0); i < count; i++) {
+				long needed = records(newSize, i);
+				long current = grown[i] == null ? 0 : grown[i].capacity() / RECORD_BYTES;
+				if (current >= needed) {
+					continue;
+				}
+				long capacity = needed;
+				if (writable && needed < SEGMENT_RECORDS) {
+					// Room for the next deals, which extends the file past the last record
+					capacity = Math.min(Math.max(needed, Math.max(current * 2, MIN_MAPPED_RECORDS)), SEGMENT_RECORDS);
+				}
+				long position = HEADER_BYTES + ((long) i << SEGMENT_BITS) * RECORD_BYTES;
+				grown[i] = channel.map(MapMode.READ_ONLY, position, capacity * RECORD_BYTES);
+				grown[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+			segments = grown;
+		}
+		size = newSize;
+	}
+
+	/**
+	 * @return the number of records of a segment in a database of the given size
+	 */
+	private static long records(long size, int segment) {
+		return Math.min(size - ((long) segment << SEGMENT_BITS), SEGMENT_RECORDS);
+	}
+
+	/**
+	 * @return the index of the record of a deal in the database
+	 */
+	private long index(long deal) {
+		long index = deal - firstDeal;
+		if (index < 0 || index >= size) {
+			throw new IllegalArgumentException("Deal not in database: " + deal);
+		}
+		return index;
+	}
+
+	private MappedByteBuffer segment(long index) {
+		return segments[(int) (index >>> SEGMENT_BITS)];
+	}
+
+	private static int offset(long index) {
+		return (int) (index & (SEGMENT_RECORDS - 1)) * RECORD_BYTES;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+}
@@ -0,0 +1,257 @@
+package se.djax.kantele.solver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.model.Move;
+import se.djax.kantele.model.MoveGenerator;
+import se.djax.kantele.model.PackedBoard;
+import se.djax.kantele.model.Zobrist;
+import se.djax.kantele.solver.SolverResult.Status;
+
+/**
+ * Finds a suggested next move for the player on a background thread. A hint is
+ * requested after every move and the search runs within a time budget. A new
+ * request cancels the running search, which then stops within a few thousand
+ * nodes, so the search never holds up the game.
+ * <p>
+ * Until the search is done a simple suggestion from the legal moves is shown
+ * (flips and foundation moves first). Every position along a found solution is
+ * cached by its Zobrist hash, so when the player follows the hints the next
+ * hint is known without searching again.
+ *
+ */
+public class HintService {
+
+	/**
+	 * Returned when there is no hint for a position
+	 */
+	public static final int NO_HINT = -1;
+
+	public static final long DEFAULT_BUDGET = 200;
+	public static final long DEFAULT_NODE_LIMIT = 1_000_000;
+
+	/**
+	 * Number of positions whose best move is remembered
+	 */
+	private static final int CACHE_SIZE = 4096;
+
+	private final Solver solver;
+	private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+	private final Thread thread;
+
+	/**
+	 * Best move of recently searched positions by hash, only used by the search
+	 * thread
+	 */
+	private final Map<Long, Integer> cache = new LinkedHashMap<Long, Integer>(CACHE_SIZE, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	// Guarded by this
+	private PackedBoard pending;
+	private long pendingHash;
+	private long hintHash;
+	private int hint = NO_HINT;
+
+	/**
+	 * True if the hint will not get any better by searching
+	 */
+	private boolean searched;
+	private boolean running = true;
+
+	/**
+	 * A hint service searching for at most {@link HintService#DEFAULT_BUDGET}
+	 * milliseconds per position
+	 */
+	public HintService() {
+		this(DEFAULT_BUDGET, DEFAULT_NODE_LIMIT);
+	}
+
+	/**
+	 * @param budget
+	 *            maximum time in milliseconds searched per position
+	 * @param nodeLimit
+	 *            maximum number of nodes searched per position
+	 */
+	public HintService(long budget, long nodeLimit) {
+		solver = new Solver(Solver.tableBitsFor(nodeLimit));
+		solver.setTimeLimit(budget);
+		solver.setNodeLimit(nodeLimit);
+
+		thread = new Thread(this::run, "kantele-hints");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Find a hint for a new position, cancelling the search of the previous one.
+	 * Called on the game thread after every move
+	 *
+	 * @param board
+	 *            a board without draged cards, see
+	 *            {@link PackedBoard#read(GameBoard)}
+	 */
+	public synchronized void request(GameBoard board) {
+		long hash = board.getHash();
+		if (pending == null && hash == hintHash && searched) {
+			// Already known
+			return;
+		}
+		pending = PackedBoard.of(board);
+		pendingHash = hash;
+		solver.setCancelled(true);
+		notifyAll();
+	}
+
+	/**
+	 * Stop the running search, e.g. when the player starts to act
+	 */
+	public synchronized void cancel() {
+		pending = null;
+		solver.setCancelled(true);
+	}
+
+	/**
+	 * @param hash
+	 *            the Zobrist hash of the current position, see
+	 *            {@link GameBoard#getHash()}
+	 * @return the suggested move (see {@link Move}) for the position or
+	 *         {@link HintService#NO_HINT} if there is none yet
+	 */
+	public synchronized int getHint(long hash) {
+		return hash == hintHash ? hint : NO_HINT;
+	}
+
+	/**
+	 * Stop the search thread
+	 */
+	public void close() {
+		synchronized (this) {
+			running = false;
+			solver.setCancelled(true);
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		while (true) {
+			PackedBoard board;
+			long hash;
+			synchronized (this) {
+				while (running && pending == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!running) {
+					return;
+				}
+				board = pending;
+				hash = pendingHash;
+				pending = null;
+				// Cleared while holding the lock so that a new request always cancels
+				solver.setCancelled(false);
+			}
+
+			Integer cached = cache.get(hash);
+			if (cached != null) {
+				publish(hash, cached, true);
+				continue;
+			}
+
+			int suggestion = suggest(board);
+			publish(hash, suggestion, false);
+
+			SolverResult result = solver.solve(board);
+			if (result.getStatus() == Status.Won && result.getMoves().length > 0) {
+				remember(board, result.getMoves());
+				publish(hash, result.getMoves()[0], true);
+			} else if (result.getStatus() == Status.Lost) {
+				// No search will do better, keep the simple suggestion
+				cache.put(hash, suggestion);
+				publish(hash, suggestion, true);
+			}
+		}
+	}
+
+	private synchronized void publish(long hash, int move, boolean searched) {
+		hintHash = hash;
+		hint = move;
+		this.searched = searched;
+	}
+
+	/**
+	 * Cache the next move of every position along a solution
+	 */
+	private void remember(PackedBoard start, int[] solution) {
+		PackedBoard board = start.copy();
+		for (int move : solution) {
+			cache.put(Zobrist.hash(board), move);
+			board.apply(move);
+		}
+	}
+
+	/**
+	 * @return a reasonable legal move without searching, or
+	 *         {@link HintService#NO_HINT} if there are no legal moves
+	 */
+	private int suggest(PackedBoard board) {
+		int n = MoveGenerator.generate(board, moves);
+		int best = NO_HINT;
+		int bestScore = 0;
+		for (int i = 0; i < n; i++) {
+			int score = score(board, moves[i]);
+			if (score > bestScore) {
+				best = moves[i];
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return how good a move looks on its own, 0 for moves that are never
+	 *         suggested
+	 */
+	private static int score(PackedBoard board, int move) {
+		switch (Move.type(move)) {
+		case Move.FLIP:
+			return 5;
+		case Move.DRAW:
+		case Move.RECYCLE:
+			return 1;
+		default:
+			int from = Move.from(move);
+			if (Move.to(move) >= PackedBoard.FOUNDATION) {
+				// Moving between foundations is pointless
+				return from >= PackedBoard.FOUNDATION ? 0 : 4;
+			}
+			if (from == PackedBoard.PICKED_DECK) {
+				return 2;
+			}
+			if (from < PackedBoard.FOUNDATION) {
+				// Moving a whole run is only useful if it uncovers a face down card
+				int below = board.size(from) - Move.count(move) - 1;
+				return below >= 0 && PackedBoard.isFaceDown(board.card(from, below)) ? 3 : 0;
+			}
+			return 0;
+		}
+	}
+
+}
@@ -0,0 +1,634 @@
+package se.djax.kantele.solver;
+
+import java.util.Arrays;
+
+import se.djax.kantele.model.Card;
+import se.djax.kantele.model.GameBoard;
+import se.djax.kantele.model.Move;
+import se.djax.kantele.model.PackedBoard;
+import se.djax.kantele.solver.SolverResult.Status;
+import se.djax.kantele.stack.Foundation;
+import se.djax.kantele.stack.Tableau;
+
+/**
+ * Searches for a winning move sequence from a position using a depth first
+ * search over {@link PackedBoard}s. Visited positions are stored in a
+ * {@link TranspositionTable} and moves are ordered so that the most promising
+ * are tried first. The search is limited by a node and a time budget.
+ * <p>
+ * Instead of drawing one card at a time the search plays any card that can be
+ * reached by drawing from the deck directly, and it stops as soon as every
+ * tableau card is face up since such a position is always won. Both are
+ * expanded to ordinary moves in the returned solution.
+ * <p>
+ * Some moves that rarely matter are never tried (e.g. moving only a part of a
+ * run between tableaus unless it frees a card for a foundation), so
+ * {@link Status#Lost} means that no solution exists using the remaining moves.
+ * A solver instance is not thread safe but can be reused for many searches.
+ *
+ */
+public class Solver {
+
+	public static final int DEFAULT_TABLE_BITS = 22;
+	public static final long DEFAULT_NODE_LIMIT = 5_000_000;
+	public static final long DEFAULT_TIME_LIMIT = 10_000;
+
+	/**
+	 * How many nodes to visit between checks of the time limit
+	 */
+	private static final int TIME_CHECK_INTERVAL = 4096;
+
+	/**
+	 * Upper bound of the number of moves generated in a single position
+	 */
+	private static final int MAX_MOVES = 256;
+
+	/**
+	 * Number of cards left in the deck after dealing, the most cards the deck and
+	 * the picked deck can hold together
+	 */
+	private static final int STOCK_SIZE = Card.DECK_SIZE - PackedBoard.TABLEAU_COUNT * (PackedBoard.TABLEAU_COUNT + 1) / 2;
+
+	/**
+	 * Upper bound of the number of moves finishing a decided position: every card
+	 * to a foundation and at most one pass through the deck, including the
+	 * recycle, per card in the deck
+	 */
+	public static final int MAX_FINISHING_MOVES = Card.DECK_SIZE + STOCK_SIZE * (STOCK_SIZE + 1);
+
+	/**
+	 * Generated moves playing a card from the deck store the number of deck moves
+	 * needed before the move above the bits used by {@link Move}
+	 */
+	private static final int STEP_SHIFT = 16;
+	private static final int MOVE_MASK = (1 << STEP_SHIFT) - 1;
+
+	private final TranspositionTable table;
+	private final PackedBoard board;
+
+	private long nodeLimit = DEFAULT_NODE_LIMIT;
+	private long timeLimitNanos = DEFAULT_TIME_LIMIT * 1_000_000;
+
+	/**
+	 * Set from another thread to stop searching, checked for every new position
+	 */
+	private volatile boolean cancelled;
+
+	// Search stack, grown when needed
+	private int[] moves;
+	private int[] moveStart;
+	private int[] moveCursor;
+	private int[] path;
+
+	public Solver() {
+		this(DEFAULT_TABLE_BITS);
+	}
+
+	/**
+	 * @param tableBits
+	 *            the transposition table will have room for 2^tableBits positions
+	 */
+	public Solver(int tableBits) {
+		table = new TranspositionTable(tableBits);
+		board = new PackedBoard();
+		moves = new int[MAX_MOVES * 64];
+		moveStart = new int[64];
+		moveCursor = new int[64];
+		path = new int[64];
+	}
+
+	/**
+	 * @param nodeLimit
+	 * @return the smallest table size that can hold every position visited
+	 *         within the node limit, see {@link Solver#Solver(int)}
+	 */
+	public static int tableBitsFor(long nodeLimit) {
+		int bits = 10;
+		while (bits < DEFAULT_TABLE_BITS && (1L << bits) * 3 / 4 < nodeLimit) {
+			bits++;
+		}
+		return bits;
+	}
+
+	/**
+	 * @param nodeLimit
+	 *            maximum number of positions to visit in one search
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * @param millis
+	 *            maximum time of one search in milliseconds
+	 */
+	public void setTimeLimit(long millis) {
+		this.timeLimitNanos = millis * 1_000_000;
+	}
+
+	/**
+	 * Stop the running search and any later search as soon as possible, they
+	 * return {@link Status#Unknown}. Can be called from any thread
+	 *
+	 * @param cancelled
+	 *            true to stop searching until set to false again
+	 */
+	public void setCancelled(boolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * Search for a winning move sequence from the position of a game board
+	 *
+	 * @param start
+	 *            a board without draged cards, see
+	 *            {@link PackedBoard#read(GameBoard)}
+	 * @return the result of the search
+	 */
+	public SolverResult solve(GameBoard start) {
+		return solve(PackedBoard.of(start));
+	}
+
+	/**
+	 * Search for a winning move sequence
+	 *
+	 * @param start
+	 *            the position to search from, it is not modified
+	 * @return the result of the search
+	 */
+	public SolverResult solve(PackedBoard start) {
+		long startTime = System.nanoTime();
+		long deadline = startTime + timeLimitNanos;
+		long nodes = 1;
+
+		board.copyFrom(start);
+		table.clear();
+		table.add(board.hash64());
+
+		if (isDecided(board)) {
+			return result(start, Status.Won, 0, nodes, startTime);
+		}
+
+		int depth = 0;
+		moveStart[0] = 0;
+		moveCursor[0] = 0;
+		moveStart[1] = generate(board, moves, 0);
+
+		while (true) {
+			if (moveCursor[depth] < moveStart[depth + 1] - moveStart[depth]) {
+				int move = moves[moveStart[depth] + moveCursor[depth]++];
+				apply(board, move);
+				nodes++;
+
+				if (isDecided(board)) {
+					path[depth] = move;
+					return result(start, Status.Won, depth + 1, nodes, startTime);
+				}
+
+				// Skip positions that have already been searched
+				if (!table.add(board.hash64())) {
+					undo(board, move);
+					continue;
+				}
+
+				if (nodes >= nodeLimit || cancelled || (nodes % TIME_CHECK_INTERVAL == 0 && System.nanoTime() > deadline)) {
+					return result(start, Status.Unknown, 0, nodes, startTime);
+				}
+
+				// Go one level deeper
+				path[depth] = move;
+				depth++;
+				ensureCapacity(depth);
+				moveCursor[depth] = 0;
+				moveStart[depth + 1] = generate(board, moves, moveStart[depth]);
+			} else {
+				// All moves tried, backtrack
+				if (depth == 0) {
+					return result(start, table.isOverflowed() ? Status.Unknown : Status.Lost, 0, nodes, startTime);
+				}
+				depth--;
+				undo(board, path[depth]);
+			}
+		}
+	}
+
+	/**
+	 * Create the result of a search where the searched path is expanded to
+	 * ordinary moves
+	 */
+	private SolverResult result(PackedBoard start, Status status, int length, long nodes, long startTime) {
+		int[] solution = new int[0];
+		if (status == Status.Won) {
+			PackedBoard replay = start.copy();
+			MoveList list = new MoveList();
+			for (int i = 0; i < length; i++) {
+				int steps = path[i] >>> STEP_SHIFT;
+				for (int step = 0; step < steps; step++) {
+					list.add(replay, deckMove(replay));
+				}
+				list.add(replay, path[i] & MOVE_MASK);
+			}
+
+			// Move the remaining cards to the foundations
+			while (!replay.isWon()) {
+				list.add(replay, finishingMove(replay));
+			}
+			solution = list.toArray();
+		}
+
+		long memory = table.getMemoryBytes() + (long) (moves.length + moveStart.length + moveCursor.length + path.length) * Integer.BYTES + PackedBoard.BYTES;
+		return new SolverResult(status, solution, nodes, System.nanoTime() - startTime, memory);
+	}
+
+	/**
+	 * Grow the search stack so that moves can be generated at the given depth
+	 */
+	private void ensureCapacity(int depth) {
+		if (depth + 1 >= moveStart.length) {
+			int length = moveStart.length * 2;
+			moveStart = Arrays.copyOf(moveStart, length);
+			moveCursor = Arrays.copyOf(moveCursor, length);
+			path = Arrays.copyOf(path, length);
+		}
+		if (moveStart[depth] + MAX_MOVES > moves.length) {
+			moves = Arrays.copyOf(moves, moves.length * 2);
+		}
+	}
+
+	/**
+	 * Apply a generated move including any deck moves before it
+	 */
+	private static void apply(PackedBoard board, int move) {
+		int steps = move >>> STEP_SHIFT;
+		for (int step = 0; step < steps; step++) {
+			board.apply(deckMove(board));
+		}
+		board.apply(move & MOVE_MASK);
+	}
+
+	/**
+	 * Revert a move applied with {@link Solver#apply(PackedBoard, int)}
+	 */
+	private static void undo(PackedBoard board, int move) {
+		board.undo(move & MOVE_MASK);
+		undoDeckMoves(board, move >>> STEP_SHIFT);
+	}
+
+	private static void undoDeckMoves(PackedBoard board, int steps) {
+		for (int step = 0; step < steps; step++) {
+			// A draw always leaves a card in the picked deck, a recycle never does
+			board.undo(board.size(PackedBoard.PICKED_DECK) == 0 ? Move.recycle() : Move.draw());
+		}
+	}
+
+	/**
+	 * @return a draw if the deck has cards left otherwise a recycle
+	 */
+	private static int deckMove(PackedBoard board) {
+		return board.size(PackedBoard.DECK) > 0 ? Move.draw() : Move.recycle();
+	}
+
+	/**
+	 * @return true if every tableau card is face up. The tableaus are then
+	 *         ordered runs and every card in the deck can be reached, so all
+	 *         remaining cards can always be moved to the foundations
+	 */
+	public static boolean isDecided(PackedBoard board) {
+		for (int t = PackedBoard.TABLEAU; t < PackedBoard.FOUNDATION; t++) {
+			// Face down cards are always at the bottom of a tableau
+			if (board.size(t) > 0 && PackedBoard.isFaceDown(board.card(t, 0))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finish a decided position (see {@link Solver#isDecided(PackedBoard)}) by
+	 * moving every card to the foundations, drawing from the deck whenever no card
+	 * can be moved. Every pass through the deck moves at least one card, since the
+	 * lowest card left is always a tableau top or in the deck.
+	 *
+	 * @param board
+	 *            the position, it is won when this returns
+	 * @param moves
+	 *            buffer of at least {@link Solver#MAX_FINISHING_MOVES} moves
+	 * @return the number of moves applied and written to the buffer
+	 */
+	public static int finish(PackedBoard board, int[] moves) {
+		if (!isDecided(board)) {
+			throw new IllegalArgumentException("Position is not decided");
+		}
+		if (moves.length < MAX_FINISHING_MOVES) {
+			throw new IllegalArgumentException("Move buffer must hold " + MAX_FINISHING_MOVES + " moves: " + moves.length);
+		}
+
+		int n = 0;
+		while (!board.isWon()) {
+			int move = finishingMove(board);
+			board.apply(move);
+			moves[n++] = move;
+		}
+		return n;
+	}
+
+	/**
+	 * @return the next move to the foundations in a position where every tableau
+	 *         card is face up, or a deck move if no card can be moved
+	 */
+	private static int finishingMove(PackedBoard board) {
+		for (int from = PackedBoard.PICKED_DECK; from < PackedBoard.FOUNDATION; from++) {
+			int foundation = foundationFor(board, board.top(from));
+			if (foundation >= 0) {
+				return Move.move(from, foundation, 1);
+			}
+		}
+		return deckMove(board);
+	}
+
+	/**
+	 * Generate the moves worth trying in a position, most promising first
+	 *
+	 * @param board
+	 *            the position, it is temporarily modified but restored before
+	 *            returning
+	 * @param buffer
+	 *            where the moves are written
+	 * @param offset
+	 *            index of the first move in the buffer
+	 * @return the index after the last generated move
+	 */
+	private static int generate(PackedBoard board, int[] buffer, int offset) {
+		int n = offset;
+
+		// Turning a card face up never hurts so do that before anything else
+		for (int t = PackedBoard.TABLEAU; t < PackedBoard.FOUNDATION; t++) {
+			int top = board.top(t);
+			if (top >= 0 && PackedBoard.isFaceDown(top)) {
+				buffer[n++] = Move.flip(t);
+				return n;
+			}
+		}
+
+		// Cards that no other card can be placed on are always moved to the
+		// foundations directly
+		int safe = safeFoundationMove(board);
+		if (safe != 0) {
+			buffer[n++] = safe;
+			return n;
+		}
+
+		// Tableau to foundation
+		for (int t = PackedBoard.TABLEAU; t < PackedBoard.FOUNDATION; t++) {
+			int foundation = foundationFor(board, board.top(t));
+			if (foundation >= 0) {
+				buffer[n++] = Move.move(t, foundation, 1);
+			}
+		}
+
+		// Deck to foundation and to tableau are generated together since both
+		// walk through the deck
+		int deckStart = n;
+		n = generateDeckMoves(board, buffer, n);
+		int deckToTableau = partitionFoundationMoves(buffer, deckStart, n);
+
+		// Tableau to tableau, ordered before deck to tableau
+		int tableauStart = n;
+		for (int from = PackedBoard.TABLEAU; from < PackedBoard.FOUNDATION; from++) {
+			n = generateTableauMoves(board, from, buffer, n);
+		}
+		rotate(buffer, deckToTableau, tableauStart, n);
+
+		// Foundation back to tableau
+		for (int from = PackedBoard.FOUNDATION; from < PackedBoard.STACK_COUNT; from++) {
+			int top = board.top(from);
+			if (top >= 0) {
+				n = generateToTableau(board, from, top, 1, 0, buffer, n);
+			}
+		}
+
+		return n;
+	}
+
+	/**
+	 * Generate a move for every card that can be reached in the deck and played,
+	 * together with the number of deck moves needed to reach it
+	 */
+	private static int generateDeckMoves(PackedBoard board, int[] buffer, int n) {
+		int cards = board.size(PackedBoard.DECK) + board.size(PackedBoard.PICKED_DECK);
+
+		// After drawing all cards, recycling and drawing the picked cards again we
+		// are back where we started
+		int cycle = cards == 0 ? 0 : cards + 1;
+
+		int steps = 0;
+		while (true) {
+			int card = board.top(PackedBoard.PICKED_DECK);
+			if (card >= 0) {
+				int foundation = foundationFor(board, card);
+				if (foundation >= 0) {
+					buffer[n++] = Move.move(PackedBoard.PICKED_DECK, foundation, 1) | steps << STEP_SHIFT;
+				}
+				n = generateToTableau(board, PackedBoard.PICKED_DECK, card, 1, steps, buffer, n);
+			}
+
+			if (steps + 1 >= cycle) {
+				break;
+			}
+			board.apply(deckMove(board));
+			steps++;
+		}
+
+		undoDeckMoves(board, steps);
+		return n;
+	}
+
+	/**
+	 * Reorder the moves in buffer[start, end) so that moves to foundations come
+	 * first, keeping their order
+	 *
+	 * @return the index of the first move that is not to a foundation
+	 */
+	private static int partitionFoundationMoves(int[] buffer, int start, int end) {
+		int split = start;
+		for (int i = start; i < end; i++) {
+			int move = buffer[i];
+			if (Move.to(move) >= PackedBoard.FOUNDATION) {
+				System.arraycopy(buffer, split, buffer, split + 1, i - split);
+				buffer[split++] = move;
+			}
+		}
+		return split;
+	}
+
+	/**
+	 * Swap the two adjacent ranges buffer[start, middle) and buffer[middle, end)
+	 */
+	private static void rotate(int[] buffer, int start, int middle, int end) {
+		reverse(buffer, start, middle);
+		reverse(buffer, middle, end);
+		reverse(buffer, start, end);
+	}
+
+	private static void reverse(int[] buffer, int start, int end) {
+		for (int i = start, j = end - 1; i < j; i++, j--) {
+			int tmp = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = tmp;
+		}
+	}
+
+	/**
+	 * Generate moves of face up runs from a tableau to other tableaus. A run is
+	 * only moved if it turns a face down card, empties the tableau or frees a
+	 * card that can be moved to a foundation
+	 */
+	private static int generateTableauMoves(PackedBoard board, int from, int[] buffer, int n) {
+		int size = board.size(from);
+		if (size == 0) {
+			return n;
+		}
+
+		// Find the bottom most face up card
+		int first = size - 1;
+		while (first > 0 && !PackedBoard.isFaceDown(board.card(from, first - 1))) {
+			first--;
+		}
+
+		for (int index = first; index < size; index++) {
+			int card = board.card(from, index);
+			boolean useful;
+			if (index == 0) {
+				// Emptying a tableau is only useful if a king can be moved there
+				useful = PackedBoard.rank(card) != Card.RANK_COUNT && isKingAvailable(board);
+			} else {
+				int below = board.card(from, index - 1);
+				useful = PackedBoard.isFaceDown(below) || foundationFor(board, below) >= 0;
+			}
+
+			if (useful) {
+				n = generateToTableau(board, from, card, size - index, 0, buffer, n);
+			}
+		}
+
+		return n;
+	}
+
+	/**
+	 * @return true if a king that is not already at the bottom of a tableau can
+	 *         be reached
+	 */
+	private static boolean isKingAvailable(PackedBoard board) {
+		for (int stack = PackedBoard.DECK; stack < PackedBoard.FOUNDATION; stack++) {
+			int size = board.size(stack);
+			for (int i = stack >= PackedBoard.TABLEAU ? 1 : 0; i < size; i++) {
+				int card = board.card(stack, i);
+				if (PackedBoard.rank(card) == Card.RANK_COUNT && (stack < PackedBoard.TABLEAU || !PackedBoard.isFaceDown(card))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Generate moves of count cards with card at the bottom to every tableau that
+	 * accepts it. Only the first empty tableau is used since they are all equal
+	 */
+	private static int generateToTableau(PackedBoard board, int from, int card, int count, int steps, int[] buffer, int n) {
+		boolean emptyUsed = false;
+		for (int to = PackedBoard.TABLEAU; to < PackedBoard.FOUNDATION; to++) {
+			if (to == from) {
+				continue;
+			}
+			int top = board.top(to);
+			if (top < 0) {
+				if (emptyUsed) {
+					continue;
+				}
+				emptyUsed = true;
+			}
+			if (Tableau.accepts(top, card)) {
+				buffer[n++] = Move.move(from, to, count) | steps << STEP_SHIFT;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @param board
+	 * @param card
+	 *            a card byte or -1
+	 * @return index of the first foundation that accepts the card or -1 if none
+	 */
+	private static int foundationFor(PackedBoard board, int card) {
+		if (card < 0) {
+			return -1;
+		}
+		for (int f = PackedBoard.FOUNDATION; f < PackedBoard.STACK_COUNT; f++) {
+			if (Foundation.accepts(board.top(f), card)) {
+				return f;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a move to a foundation of a card that no card left outside the
+	 *         foundations can be placed on, or 0 if there is none
+	 */
+	private static int safeFoundationMove(PackedBoard board) {
+		for (int from = PackedBoard.PICKED_DECK; from < PackedBoard.FOUNDATION; from++) {
+			int card = board.top(from);
+			int foundation = foundationFor(board, card);
+			if (foundation >= 0 && isSafe(board, card)) {
+				return Move.move(from, foundation, 1);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * A card is safe to move to a foundation if both cards of the other color and
+	 * one rank lower already are in the foundations
+	 */
+	private static boolean isSafe(PackedBoard board, int card) {
+		int rank = PackedBoard.rank(card);
+		if (rank <= 2) {
+			return true;
+		}
+
+		// Both suits of the other color must have reached at least rank - 1
+		int found = 0;
+		for (int f = PackedBoard.FOUNDATION; f < PackedBoard.STACK_COUNT; f++) {
+			int top = board.top(f);
+			if (top >= 0 && PackedBoard.isRed(top) != PackedBoard.isRed(card) && PackedBoard.rank(top) >= rank - 1) {
+				found++;
+			}
+		}
+		return found == 2;
+	}
+
+	/**
+	 * Growable list of moves where every added move is also applied to a board
+	 */
+	private static class MoveList {
+
+		private int[] moves = new int[64];
+		private int size;
+
+		void add(PackedBoard board, int move) {
+			if (size == moves.length) {
+				moves = Arrays.copyOf(moves, size * 2);
+			}
+			moves[size++] = move;
+			board.apply(move);
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(moves, size);
+		}
+
+	}
+
+}
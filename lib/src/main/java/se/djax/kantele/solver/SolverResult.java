@@ -0,0 +1,85 @@
+package se.djax.kantele.solver;
+
+import se.djax.kantele.model.Move;
+
+/**
+ * The outcome of a {@link Solver} search together with statistics about the
+ * search
+ *
+ */
+public class SolverResult {
+
+	public enum Status {
+		/**
+		 * A winning move sequence was found
+		 */
+		Won,
+
+		/**
+		 * The search was exhausted without finding a winning move sequence
+		 */
+		Lost,
+
+		/**
+		 * The search was stopped by the node or time budget
+		 */
+		Unknown;
+	}
+
+	private final Status status;
+	private final int[] moves;
+	private final long nodes;
+	private final long elapsedNanos;
+	private final long memoryBytes;
+
+	public SolverResult(Status status, int[] moves, long nodes, long elapsedNanos, long memoryBytes) {
+		this.status = status;
+		this.moves = moves;
+		this.nodes = nodes;
+		this.elapsedNanos = elapsedNanos;
+		this.memoryBytes = memoryBytes;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the winning moves (see {@link Move}) or an empty array if the game
+	 *         was not won
+	 */
+	public int[] getMoves() {
+		return moves;
+	}
+
+	/**
+	 * @return the number of positions visited
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return visited positions per second
+	 */
+	public double getNodesPerSecond() {
+		return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return the memory in bytes used by the search structures of the solver
+	 */
+	public long getMemoryBytes() {
+		return memoryBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s in %d moves, %d nodes, %.1f ms, %.0f nodes/s, %d KiB", status, moves.length, nodes, elapsedNanos / 1e6, getNodesPerSecond(), memoryBytes / 1024);
+	}
+
+}
@@ -0,0 +1,116 @@
+package se.djax.kantele.solver;
+
+import java.util.Arrays;
+
+/**
+ * A set of 64 bit position keys using open addressing in a single long array.
+ * Used by the solver to avoid searching the same position twice. The key 0 is
+ * used to mark empty slots and is remapped to another value.
+ *
+ */
+public class TranspositionTable {
+
+	/**
+	 * The table stops accepting new keys when it is filled to this degree
+	 */
+	private static final float MAX_LOAD = 0.75f;
+
+	private final long[] keys;
+	private final int mask;
+	private final int maxSize;
+	private int size;
+	private boolean overflowed;
+
+	/**
+	 * @param bits
+	 *            the table will have room for 2^bits slots
+	 */
+	public TranspositionTable(int bits) {
+		keys = new long[1 << bits];
+		mask = keys.length - 1;
+		maxSize = (int) (keys.length * MAX_LOAD);
+	}
+
+	/**
+	 * Add a key to the table
+	 * 
+	 * @param key
+	 * @return false if the key was already in the table
+	 */
+	public boolean add(long key) {
+		if (key == 0) {
+			key = 1;
+		}
+
+		int slot = (int) (key ^ (key >>> 32)) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		// When full the key is not stored, the position may be searched again
+		if (size >= maxSize) {
+			overflowed = true;
+			return true;
+		}
+
+		keys[slot] = key;
+		size++;
+		return true;
+	}
+
+	/**
+	 * @param key
+	 * @return true if the key is in the table
+	 */
+	public boolean contains(long key) {
+		if (key == 0) {
+			key = 1;
+		}
+
+		int slot = (int) (key ^ (key >>> 32)) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Remove all keys
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, 0);
+		}
+		size = 0;
+		overflowed = false;
+	}
+
+	/**
+	 * @return the number of stored keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if any key has been rejected since the last clear because the
+	 *         table was full
+	 */
+	public boolean isOverflowed() {
+		return overflowed;
+	}
+
+	/**
+	 * @return the memory used by the table in bytes
+	 */
+	public long getMemoryBytes() {
+		return (long) keys.length * Long.BYTES;
+	}
+
+}
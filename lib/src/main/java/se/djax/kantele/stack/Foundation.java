@@ -1,7 +1,10 @@
 package se.djax.kantele.stack;
 
+import java.util.List;
+
 import se.djax.kantele.model.Card;
 import se.djax.kantele.model.Card.Rank;
+import se.djax.kantele.model.PackedBoard;
 
 /**
  * A type of stack used for the 4 stacks where cards are added by suit
@@ -14,26 +17,40 @@ public class Foundation extends Stack {
 		setSlide(false);
 	}
 
+	public Foundation(float x, float y, List<Card> initialCards) {
+		super(x, y, initialCards, false);
+	}
+
 	@Override
 	public boolean canAdd(Card card) {
+		return accepts(isEmpty() ? -1 : PackedBoard.pack(getTop()), PackedBoard.pack(card));
+	}
+
+	/**
+	 * The foundation rules on packed cards, see {@link PackedBoard}
+	 * 
+	 * @param top
+	 *            the top card of the foundation or -1 if it is empty
+	 * @param card
+	 *            the card which will be checked
+	 * @return true if the card is allowed to be added on top
+	 */
+	public static boolean accepts(int top, int card) {
 
 		// Does not make sense to add a facedown card
-		if (card.isFaceDown()) {
+		if (PackedBoard.isFaceDown(card)) {
 			return false;
 		}
 
 		// The first card must be an ace
-		if (isEmpty() && card.getRank() == Rank.Ace) {
-			return true;
+		if (top < 0) {
+			return PackedBoard.rank(card) == Rank.Ace.getValue();
 		}
 
 		// Standard rule, new card must be of same suit and exactly on rank above the
 		// top card
-		if (!isEmpty()) {
-			Card top = getTop();
-			if (card.getSuit() == top.getSuit() && card.getRank().getValue() == top.getRank().getValue() + 1) {
-				return true;
-			}
+		if (PackedBoard.suit(card) == PackedBoard.suit(top) && PackedBoard.rank(card) == PackedBoard.rank(top) + 1) {
+			return true;
 		}
 
 		// Default false
@@ -6,21 +6,43 @@ import se.djax.kantele.model.Card;
 
 /**
  * 
- * Special stack used for moving cards between stacks
+ * Special stack used for moving cards between stacks. The same picked stack can
+ * be used for every drag, see {@link PickedStack#pick(Stack, Card)}
  *
  */
 public class PickedStack extends Stack {
 
-	private final Stack sourceStack;
-	private final List<Card> pickedCards;
+	private Stack sourceStack;
+	private List<Card> pickedCards;
 
-	public PickedStack(Stack sourceStack, Card firstCard) {
+	/**
+	 * An empty picked stack
+	 */
+	public PickedStack() {
 		super(0, 0);
+	}
+
+	public PickedStack(Stack sourceStack, Card firstCard) {
+		this();
+		pick(sourceStack, firstCard);
+	}
+
+	/**
+	 * Pick cards from a stack, see {@link Stack#pickCards(Card)}
+	 * 
+	 * @param sourceStack
+	 * @param firstCard
+	 *            the bottom most picked card
+	 */
+	public void pick(Stack sourceStack, Card firstCard) {
+		if (this.sourceStack != null) {
+			throw new IllegalStateException("Cards are already picked");
+		}
 
 		this.sourceStack = sourceStack;
 		pickedCards = sourceStack.pickCards(firstCard);
-		for (Card card : pickedCards) {
-			add(card);
+		for (int i = 0; i < pickedCards.size(); i++) {
+			add(pickedCards.get(i));
 		}
 	}
 
@@ -34,6 +56,15 @@ public class PickedStack extends Stack {
 	public void restore() {
 		sourceStack.restore();
 		removeAll();
+		sourceStack = null;
+		pickedCards = null;
+	}
+
+	/**
+	 * @return the stack the cards were picked from, or null if no cards are picked
+	 */
+	public Stack getSourceStack() {
+		return sourceStack;
 	}
 
 	@Override
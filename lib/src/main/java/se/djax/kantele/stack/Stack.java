@@ -2,15 +2,21 @@ package se.djax.kantele.stack;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
 import se.djax.kantele.Entity;
+import se.djax.kantele.model.BoardState;
 import se.djax.kantele.model.Card;
+import se.djax.kantele.model.PackedBoard;
 
 /**
  * Represents a stack of cards with a position in 2D space. The stack can be
  * empty and cards can be added and removed.
+ * <p>
+ * The bounding box of the stack is always up to date, but the positions of the
+ * cards are only laid out when the cards are read. Every change marks the
+ * cards from the first changed index as dirty, so only the changed tail of the
+ * stack is laid out again.
  *
  */
 public abstract class Stack extends Entity {
@@ -22,6 +28,17 @@ public abstract class Stack extends Entity {
 
 	private final List<Card> cards;
 
+	/**
+	 * Read only view of the cards
+	 */
+	private final List<Card> cardsView;
+
+	/**
+	 * Index of the first card whose position is not up to date. Equal to the
+	 * number of cards when all positions are up to date
+	 */
+	private int dirtyFrom;
+
 	/**
 	 * The base y position for the bottom card
 	 */
@@ -38,27 +55,38 @@ public abstract class Stack extends Entity {
 	 */
 	private final List<Card> pickedCards;
 
+	/**
+	 * The state of the board the stack belongs to if any, updated on every change
+	 */
+	private BoardState state;
+
+	/**
+	 * Index of the stack in the board, see {@link PackedBoard}
+	 */
+	private int index;
+
 	public Stack(float x, float y) {
 		cards = new ArrayList<Card>();
+		cardsView = Collections.unmodifiableList(cards);
 		pickedCards = new ArrayList<Card>();
 
-		setX(x);
-		setY(y);
+		super.setX(x);
+		this.baseY = y;
 		super.setWidth(Card.WIDTH);
-		super.setHeight(Card.HEIGHT);
+		updateBoundingBox();
 	}
 
 	public Stack(float x, float y, List<Card> initialCards) {
 		this(x, y);
 		cards.addAll(initialCards);
-		updatePositions();
+		updateBoundingBox();
 	}
 
 	public Stack(float x, float y, List<Card> initialCards, boolean slide) {
 		this(x, y);
 		this.slide = slide;
 		cards.addAll(initialCards);
-		updatePositions();
+		updateBoundingBox();
 	}
 
 	@Override
@@ -76,14 +104,52 @@ public abstract class Stack extends Entity {
 			throw new UnsupportedOperationException("Card can not be added to stack:" + card);
 		}
 
+		addUnchecked(card);
+	}
+
+	private void addUnchecked(Card card) {
 		cards.add(card);
-		updatePositions();
+		if (state != null) {
+			toggleHash(cards.size() - 1);
+		}
+		invalidateFrom(cards.size() - 1);
+	}
+
+	/**
+	 * Move the top cards of this stack to the top of another stack keeping their
+	 * order. Warning: The rules of the stacks will not be taken into account
+	 * 
+	 * @param target
+	 *            another stack
+	 * @param count
+	 *            number of cards to move
+	 */
+	public final void moveTo(Stack target, int count) {
+		if (target == this) {
+			throw new IllegalArgumentException("Can not move cards to the same stack");
+		}
+		if (count > cards.size()) {
+			throw new UnsupportedOperationException("Stack has only " + cards.size() + " cards");
+		}
+
+		int first = cards.size() - count;
+		if (state != null) {
+			for (int i = first; i < cards.size(); i++) {
+				toggleHash(i);
+			}
+		}
+
+		for (int i = first; i < cards.size(); i++) {
+			target.addUnchecked(cards.get(i));
+		}
+		removeFrom(first);
 	}
 
 	public final Card getTop() {
 		if (isEmpty()) {
 			throw new UnsupportedOperationException("Stack is empty");
 		}
+		updateCardPositions();
 		return cards.get(size() - 1);
 	}
 
@@ -91,6 +157,7 @@ public abstract class Stack extends Entity {
 		if (isEmpty()) {
 			throw new UnsupportedOperationException("Stack is empty");
 		}
+		updateCardPositions();
 		return cards.get(0);
 	}
 
@@ -110,14 +177,18 @@ public abstract class Stack extends Entity {
 
 	@Override
 	public final void setY(float y) {
-		this.baseY = y;
-		updatePositions();
+		if (y != baseY) {
+			this.baseY = y;
+			invalidateFrom(0);
+		}
 	}
 
 	@Override
 	public final void setX(float x) {
-		super.setX(x);
-		updatePositions();
+		if (x != getX()) {
+			super.setX(x);
+			invalidateFrom(0);
+		}
 	}
 
 	/**
@@ -128,9 +199,15 @@ public abstract class Stack extends Entity {
 	 */
 	public abstract boolean canAdd(Card card);
 
-	private final void updatePositions() {
+	/**
+	 * Mark the positions of all cards from an index as dirty and update the
+	 * bounding box
+	 * 
+	 * @param index
+	 */
+	private final void invalidateFrom(int index) {
+		dirtyFrom = Math.min(dirtyFrom, index);
 		updateBoundingBox();
-		updateCardPositions();
 	}
 
 	/**
@@ -149,11 +226,11 @@ public abstract class Stack extends Entity {
 	}
 
 	/**
-	 * Update the coordinates of all cards in the stack based on the base Y of the
-	 * stack and if slide is being used
+	 * Update the coordinates of all dirty cards in the stack based on the base Y
+	 * of the stack and if slide is being used
 	 */
 	private final void updateCardPositions() {
-		for (int i = 0; i < cards.size(); i++) {
+		for (int i = dirtyFrom; i < cards.size(); i++) {
 			Card card = cards.get(i);
 
 			card.setX(getX());
@@ -163,10 +240,58 @@ public abstract class Stack extends Entity {
 				card.setY(baseY);
 			}
 		}
+		dirtyFrom = cards.size();
 	}
 
+	/**
+	 * Find the top most card colliding with an entity. The index of the card is
+	 * calculated from the layout of the stack so only one or two cards are tested
+	 * 
+	 * @param e
+	 *            the other entity, usually the pointer
+	 * @return the top most colliding card or null if there is none
+	 */
+	public final Card getCardAt(Entity e) {
+		if (cards.isEmpty() || !colliding(e)) {
+			return null;
+		}
+		updateCardPositions();
+
+		int i = cards.size() - 1;
+		if (slide) {
+			// Card i covers baseY - CARD_HEIGHT_DELTA * i up to that plus the card
+			// height. Start just above the estimated top most card reaching the entity
+			int estimate = (int) ((baseY + Card.HEIGHT - e.getY()) / CARD_HEIGHT_DELTA) + 1;
+			i = Math.max(0, Math.min(i, estimate));
+			while (i > 0 && cards.get(i).getY() + Card.HEIGHT <= e.getY()) {
+				i--;
+			}
+		}
+
+		// All cards below this one are further up and can not collide if it does not
+		Card card = cards.get(i);
+		return card.colliding(e) ? card : null;
+	}
+
+	/**
+	 * @return a read only view of the cards from bottom to top, with up to date
+	 *         positions
+	 */
 	public final List<Card> getCards() {
-		return Collections.unmodifiableList(cards);
+		updateCardPositions();
+		return cardsView;
+	}
+
+	/**
+	 * Indexed access to the cards without going through a list, e.g. in loops run
+	 * every frame
+	 * 
+	 * @param i
+	 * @return the card at index i from the bottom, with an up to date position
+	 */
+	public final Card getCard(int i) {
+		updateCardPositions();
+		return cards.get(i);
 	}
 
 	/**
@@ -180,7 +305,8 @@ public abstract class Stack extends Entity {
 	 */
 	public final List<Card> pickCards(Card firstCard) {
 
-		if (!cards.contains(firstCard)) {
+		int first = cards.indexOf(firstCard);
+		if (first < 0) {
 			throw new RuntimeException("Card not in stack!");
 		}
 
@@ -188,20 +314,17 @@ public abstract class Stack extends Entity {
 			throw new RuntimeException("There are already cards picked");
 		}
 
-		boolean cardFound = false;
-		for (Iterator<Card> iterator = cards.iterator(); iterator.hasNext();) {
-			Card card = iterator.next();
-			if (card == firstCard) {
-				cardFound = true;
-			}
-			if (cardFound) {
-				pickedCards.add(card);
-			}
+		for (int i = first; i < cards.size(); i++) {
+			pickedCards.add(cards.get(i));
 		}
 
-		cards.removeAll(pickedCards);
-		updatePositions();
+		if (state != null) {
+			for (int i = first; i < cards.size(); i++) {
+				toggleHash(i);
+			}
+		}
 
+		removeFrom(first);
 		return pickedCards;
 	}
 
@@ -210,17 +333,44 @@ public abstract class Stack extends Entity {
 	 * taken into account
 	 */
 	public void restore() {
-		cards.addAll(pickedCards);
+		int start = cards.size();
+		// Added one by one since addAll copies the list to an array
+		for (int i = 0; i < pickedCards.size(); i++) {
+			cards.add(pickedCards.get(i));
+		}
 		pickedCards.clear();
-		updatePositions();
+		if (state != null) {
+			for (int i = start; i < cards.size(); i++) {
+				toggleHash(i);
+			}
+		}
+		invalidateFrom(start);
+	}
+
+	/**
+	 * Remove the cards from an index to the top without updating the hash. The
+	 * remaining cards keep their positions
+	 * 
+	 * @param first
+	 */
+	private void removeFrom(int first) {
+		for (int i = cards.size() - 1; i >= first; i--) {
+			cards.remove(i);
+		}
+		invalidateFrom(cards.size());
 	}
 
 	/**
 	 * Remove all cards from this stack
 	 */
 	public final void removeAll() {
+		if (state != null) {
+			for (int i = 0; i < cards.size(); i++) {
+				toggleHash(i);
+			}
+		}
 		cards.clear();
-		updatePositions();
+		invalidateFrom(0);
 	}
 
 	/**
@@ -231,11 +381,57 @@ public abstract class Stack extends Entity {
 	 * @return the card that was removed
 	 */
 	protected Card remove(int i) {
+		if (state != null) {
+			// The card above the removed one gets a new card below it
+			toggleHash(i);
+			if (i + 1 < cards.size()) {
+				toggleHash(i + 1);
+			}
+		}
+
 		Card card = cards.remove(i);
-		updatePositions();
+
+		if (state != null && i < cards.size()) {
+			toggleHash(i);
+		}
+
+		invalidateFrom(i);
 		return card;
 	}
 
+	/**
+	 * Make the stack part of a board so that every change updates the board
+	 * state. Called by the board when the stack is created
+	 * 
+	 * @param state
+	 * @param index
+	 *            index of the stack in the board, see {@link PackedBoard}
+	 */
+	public final void attach(BoardState state, int index) {
+		this.state = state;
+		this.index = index;
+		for (int i = 0; i < cards.size(); i++) {
+			toggleHash(i);
+		}
+	}
+
+	/**
+	 * Add or remove the card at index i, lying on the card at i - 1, from the
+	 * board hash
+	 * 
+	 * @param i
+	 */
+	private void toggleHash(int i) {
+		state.toggleCard(cards.get(i).getId(), index, i > 0 ? cards.get(i - 1).getId() : -1);
+	}
+
+	/**
+	 * @return index of the stack in the board, see {@link PackedBoard}
+	 */
+	public final int getIndex() {
+		return index;
+	}
+
 	public final boolean isEmpty() {
 		return cards.isEmpty();
 	}
@@ -252,6 +448,7 @@ public abstract class Stack extends Entity {
 	 */
 	public final void setSlide(boolean slide) {
 		this.slide = slide;
+		invalidateFrom(0);
 	}
 
 }
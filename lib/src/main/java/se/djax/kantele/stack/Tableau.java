@@ -4,6 +4,7 @@ import java.util.List;
 
 import se.djax.kantele.model.Card;
 import se.djax.kantele.model.Card.Rank;
+import se.djax.kantele.model.PackedBoard;
 
 /**
  * 
@@ -19,27 +20,38 @@ public class Tableau extends Stack {
 
 	@Override
 	public boolean canAdd(Card card) {
+		return accepts(isEmpty() ? -1 : PackedBoard.pack(getTop()), PackedBoard.pack(card));
+	}
+
+	/**
+	 * The tableau rules on packed cards, see {@link PackedBoard}
+	 * 
+	 * @param top
+	 *            the top card of the tableau or -1 if it is empty
+	 * @param card
+	 *            the card which will be checked
+	 * @return true if the card is allowed to be added on top
+	 */
+	public static boolean accepts(int top, int card) {
 
 		// Not allowed to move around face down cards
-		if (card.isFaceDown()) {
+		if (PackedBoard.isFaceDown(card)) {
 			return false;
 		}
 
 		// First card must be a king
-		if (isEmpty()) {
-			return card.getRank() == Rank.King;
+		if (top < 0) {
+			return PackedBoard.rank(card) == Rank.King.getValue();
 		}
 
-		Card top = getTop();
-
 		// Do not allow a card to be added if the player has not flipped the topmost
 		// card faceup
-		if (top.isFaceDown()) {
+		if (PackedBoard.isFaceDown(top)) {
 			return false;
 		}
 
 		// Standard rule, every other color and exactly one rank above the topmost card
-		if (card.getSuit().getColor() != top.getSuit().getColor() && card.getRank().getValue() == top.getRank().getValue() - 1) {
+		if (PackedBoard.isRed(card) != PackedBoard.isRed(top) && PackedBoard.rank(card) == PackedBoard.rank(top) - 1) {
 			return true;
 		}
 